@@ -0,0 +1,86 @@
+package bench;
+
+import expression.Expression;
+import generator.ProgramGenerator;
+import interpreter.TypeChecker;
+import org.openjdk.jmh.annotations.*;
+import parser.Parser;
+import parser.TokenBuffer;
+import parser.Tokenizer;
+import service.Pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase on its own, on input prepared by the earlier phases, and the whole pipeline end to end.
+ * Run with the GC profiler (bench.Run adds it) to see the allocation rate of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PhaseBenchmarks {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"4", "64"})
+    public int depth;
+
+    @Param({"2", "16"})
+    public int width;
+
+    @Param({"4", "256"})
+    public int identifiers;
+
+    private ByteBuffer source;
+    private TokenBuffer tokens;
+    private List<Expression> expressions;
+
+    @Setup
+    public void setup() {
+        String program = new ProgramGenerator(42).size(size).depth(depth).objectWidth(width).identifiers(identifiers)
+                .generate();
+        source = ByteBuffer.wrap(program.getBytes(StandardCharsets.UTF_8));
+        tokens = Tokenizer.run(source);
+        expressions = Parser.run(tokens);
+        String result = new TypeChecker().run(expressions);
+        if (!result.startsWith("(type")) throw new IllegalStateException("generated program does not check: " + result);
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize() {
+        return Tokenizer.run(source);
+    }
+
+    @Benchmark
+    public List<Expression> parse() {
+        return Parser.run(tokens);
+    }
+
+    /**
+     * Checks without the shared closed-term cache, which would otherwise answer every iteration after the first.
+     */
+    @Benchmark
+    public String check() {
+        return new TypeChecker(null, null).run(expressions);
+    }
+
+    @Benchmark
+    public String checkCached() {
+        return new TypeChecker().run(expressions);
+    }
+
+    /**
+     * Tokenizes, parses and checks, without the shared closed-term cache for the same reason as check.
+     */
+    @Benchmark
+    public String endToEnd() {
+        return Pipeline.check(source, new TypeChecker(null, null));
+    }
+}
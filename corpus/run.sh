@@ -0,0 +1,62 @@
+#!/bin/bash
+# Checks every corpus/<name>.txt and compares the output with corpus/<name>.out. A case may list arguments for Main
+# in corpus/<name>.flags: with --server or --stream the case is fed to stdin rather than named as a file, and the
+# runner's own --round-trip saves the case as a tree file and checks that file instead.
+#
+# By default the sources are compiled afresh, which needs JDK 21. Pass a command to check another build instead,
+# e.g. corpus/run.sh java -jar type-checker-java.jar
+cd "$(dirname "$0")/.." || exit 1
+checker=("$@")
+if [ ${#checker[@]} -eq 0 ]; then
+    build=$(mktemp -d)
+    trap 'rm -rf "$build"' EXIT
+    javac --release 21 -d "$build" $(find src -name '*.java') || exit 1
+    checker=(java -cp "$build" Main)
+fi
+
+failed=0
+for source in corpus/*.txt; do
+    expected="${source%.txt}.out"
+    given=()
+    if [ -f "${source%.txt}.flags" ]; then
+        read -r -a given < "${source%.txt}.flags"
+    fi
+
+    flags=()
+    stdin=false
+    roundTrip=false
+    for flag in "${given[@]}"; do
+        case "$flag" in
+            --round-trip) roundTrip=true ;;
+            --server|--stream) stdin=true; flags+=("$flag") ;;
+            *) flags+=("$flag") ;;
+        esac
+    done
+
+    input="$source"
+    actual=""
+    if $roundTrip; then
+        input=$(mktemp)
+        actual=$("${checker[@]}" --save "$input" "$source" 2>/dev/null)
+    fi
+    if [ -z "$actual" ]; then
+        if $stdin; then
+            actual=$("${checker[@]}" "${flags[@]}" < "$input" 2>/dev/null)
+        else
+            actual=$("${checker[@]}" "${flags[@]}" "$input" 2>/dev/null)
+        fi
+    fi
+    if $roundTrip; then
+        rm -f "$input"
+    fi
+
+    if [ "$actual" != "$(cat "$expected")" ]; then
+        echo "FAIL $source"
+        echo "  expected: $(cat "$expected")"
+        echo "  actual:   $actual"
+        failed=$((failed + 1))
+    fi
+done
+
+echo "$failed failed"
+[ $failed -eq 0 ]
@@ -1,39 +1,162 @@
-import expression.Expression;
-import interpreter.TypeChecker;
-import parser.*;
+import service.CheckService;
+import service.PhaseStats;
+import service.Pipeline;
+import service.Server;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 public class Main {
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
 
-        boolean devMode = false;
+        boolean stream = false;
+        boolean parallel = false;
+        boolean server = false;
+        boolean stats = false;
+        boolean flat = false;
+        boolean allErrors = false;
+        boolean each = false;
+        boolean sessions = false;
+        String socket = null;
+        String save = null;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stream" -> stream = true;
+                case "--parallel" -> parallel = true;
+                case "--server" -> server = true;
+                case "--stats" -> stats = true;
+                case "--flat" -> flat = true;
+                case "--all-errors" -> allErrors = true;
+                case "--each" -> each = true;
+                case "--sessions" -> sessions = true;
+                case "--socket" -> socket = value(args, ++i);
+                case "--save" -> save = value(args, ++i);
+                case "--concurrency" -> concurrency = positive(args, ++i);
+                default -> paths.add(args[i]);
+            }
+        }
+
+        if (stats && (stream || server || socket != null || save != null || each || allErrors)) {
+            usage("--stats measures the phases of checking a whole program, so it cannot be combined with --stream, "
+                    + "--server, --socket, --save, --each or --all-errors");
+        }
+
+        if (socket != null || server) {
+            CheckService service = new CheckService(concurrency);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(service.getStats())));
+            if (socket != null) Server.listen(Path.of(socket), service, sessions);
+            else Server.serve(System.in, System.out, service, sessions);
+            return;
+        }
+
+        if (stream) {
+            System.out.println(Pipeline.checkStreaming(System.in));
+            return;
+        }
+
+        ByteBuffer source = paths.isEmpty() ? ByteBuffer.wrap(System.in.readAllBytes()) : read(paths);
+
+        if (save != null) {
+            String error = Pipeline.save(source, Path.of(save));
+            if (error != null) System.out.println(error);
+            return;
+        }
+
+        if (each) {
+            Pipeline.checkEach(source, flat, allErrors, System.out);
+            return;
+        }
+
+        if (allErrors) {
+            for (String line : Pipeline.checkAll(source, flat)) {
+                System.out.println(line);
+            }
+            return;
+        }
 
-        Scanner scanner = devMode ? new Scanner(new File("source.txt")) : new Scanner(System.in);
-        ArrayList<String> input = new ArrayList<>();
-        while (scanner.hasNext()) {
-            input.add(scanner.nextLine());
+        if (Pipeline.isSaved(source)) {
+            PhaseStats phases = stats ? new PhaseStats() : PhaseStats.ifRecording();
+            System.out.println(Pipeline.checkSaved(source, parallel, flat, phases));
+            if (stats) System.err.print(phases);
+            return;
         }
 
-        List<Token> tokens = Tokenizer.run(input);
-        if (tokens == null) {
-            System.out.println("Invalid tokens.");
+        if (flat) {
+            PhaseStats phases = stats ? new PhaseStats() : PhaseStats.ifRecording();
+            System.out.println(Pipeline.checkFlat(source, phases));
+            if (stats) System.err.print(phases);
             return;
         }
 
-        List<Expression> expressions = Parser.run(tokens);
-        if (expressions == null) {
-            System.out.println("Invalid syntax.");
+        if (stats) {
+            PhaseStats phases = new PhaseStats();
+            System.out.println(Pipeline.check(source, parallel, phases));
+            System.err.print(phases);
             return;
         }
 
-        String result = new TypeChecker().run(expressions);
+        System.out.println(Pipeline.check(source, parallel));
+    }
+
+    /**
+     * Returns the value given after an option, exiting with a usage error if the option is the last argument.
+     */
+    private static String value(String[] args, int i) {
+        if (i == args.length) usage(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private static int positive(String[] args, int i) {
+        String value = value(args, i);
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // reported below, like a number that is not positive
+        }
+        usage(args[i - 1] + " needs a positive whole number, not " + value);
+        return 0;
+    }
 
-        System.out.println(result);
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: Main [--stream | --server | --socket <path>] [--sessions] [--concurrency <n>] "
+                + "[--parallel] [--flat] [--each] [--all-errors] [--stats] [--save <file>] [file...]");
+        System.exit(2);
+    }
+
+    /**
+     * Reads the given files as one program, as if they were joined with a line break between each two. A single
+     * file is mapped rather than read.
+     */
+    private static ByteBuffer read(List<String> paths) throws IOException {
+        if (paths.size() == 1) return map(paths.get(0));
+
+        List<ByteBuffer> files = new ArrayList<>(paths.size());
+        long length = 0;
+        for (String path : paths) {
+            ByteBuffer file = map(path);
+            files.add(file);
+            length += file.limit() + 1;
+        }
+        ByteBuffer source = ByteBuffer.allocate(Math.toIntExact(length));
+        for (ByteBuffer file : files) {
+            source.put(file).put((byte) '\n');
+        }
+        return source.flip();
+    }
+
+    private static ByteBuffer map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
     }
 }
@@ -20,11 +20,26 @@ public abstract class Expression {
         SET,
         OBJECT,
         FIELD,
+        LETREC,
     }
 
     protected final Type type;
     protected final String value;
 
+    // set by the resolver: the number of nodes in this subtree, whether it reads no variable from outside itself,
+    // whether some fun in it leaves its argument type to be inferred, and a 128-bit hash of its structure that
+    // ignores the names of the variables bound inside it
+    private int size;
+    private boolean closed;
+    private boolean inferred;
+    private long hashHigh;
+    private long hashLow;
+
+    // for incremental checking: the number shared by every structurally identical subtree, and the variables it
+    // reads from outside itself (only kept for subtrees worth caching)
+    private int digest = -1;
+    private FreeVariables freeVariables;
+
     public Expression(Type type) {
         this.type = type;
         this.value = null;
@@ -42,4 +57,45 @@ public abstract class Expression {
     public String getValue() {
         return value;
     }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isInferred() {
+        return inferred;
+    }
+
+    public long getHashHigh() {
+        return hashHigh;
+    }
+
+    public long getHashLow() {
+        return hashLow;
+    }
+
+    public void setShape(int size, boolean closed, boolean inferred, long hashHigh, long hashLow) {
+        this.size = size;
+        this.closed = closed;
+        this.inferred = inferred;
+        this.hashHigh = hashHigh;
+        this.hashLow = hashLow;
+    }
+
+    public int getDigest() {
+        return digest;
+    }
+
+    public FreeVariables getFreeVariables() {
+        return freeVariables;
+    }
+
+    public void setDigest(int digest, FreeVariables freeVariables) {
+        this.digest = digest;
+        this.freeVariables = freeVariables;
+    }
 }
@@ -1,4 +0,0 @@
-package expression;
-
-public record ExpressionResult(Expression expression, int tokensConsumed) {
-}
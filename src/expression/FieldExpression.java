@@ -1,9 +1,14 @@
 package expression;
 
+import type.ObjectType;
+
 public class FieldExpression extends Expression {
 
     private final Expression object;
     private final String attribute;
+    // the object type the attribute was last resolved against, and its position there
+    private ObjectType resolvedType;
+    private int slot = -1;
 
     public FieldExpression(Expression object, String attribute) {
         super(Type.FIELD);
@@ -18,4 +23,17 @@ public class FieldExpression extends Expression {
     public String getAttribute() {
         return attribute;
     }
+
+    public ObjectType getResolvedType() {
+        return resolvedType;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void resolve(ObjectType resolvedType, int slot) {
+        this.resolvedType = resolvedType;
+        this.slot = slot;
+    }
 }
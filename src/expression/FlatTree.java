@@ -0,0 +1,197 @@
+package expression;
+
+import type.Primitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact encoding of a whole program: every node is an index into parallel primitive arrays holding its kind
+ * and up to three operands, so a tree costs a few bytes per node and is walked without chasing pointers. Names
+ * and type annotations are numbered in tables of their own. The operands of each kind are
+ * <pre>
+ * NUMBER, BOOLEAN                         -
+ * IDENTIFIER                              name
+ * ARITHMETIC, RELATIONAL, LOGICAL,
+ * APP, BEGIN                              left, right
+ * UNARY                                   operand
+ * CONDITIONAL                             condition, consequent, alternate
+ * FUNCTION                                argument name, argument type (-1 to infer it), body
+ * SET                                     name, new value
+ * FIELD                                   object, attribute name
+ * OBJECT                                  first pair, pair count
+ * LET                                     first pair, pair count, body
+ * LETREC                                  first pair, pair count, body
+ * </pre>
+ * where the pairs of a let or object are (name, value node) entries in a separate pair array. The pairs of a letrec
+ * are followed by as many more, one per variable, each holding the variable's annotated type (-1 to infer it) in
+ * place of a name and -1 in place of a node.
+ */
+public class FlatTree {
+
+    private static final Expression.Type[] TYPES = Expression.Type.values();
+
+    private byte[] kinds = new byte[64];
+    private int[] first = new int[64];
+    private int[] second = new int[64];
+    private int[] third = new int[64];
+    private int size;
+
+    private int[] pairs = new int[16];
+    private int pairCount;
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<Primitive> types = new ArrayList<>();
+    private final Map<Primitive, Integer> typeIds = new IdentityHashMap<>();
+
+    private int[] roots = new int[0];
+    private boolean annotated = true;
+
+    public FlatTree() {
+    }
+
+    /**
+     * Wraps arrays that already hold a whole tree, as read back from a file. The arrays are taken over, not copied.
+     */
+    public FlatTree(byte[] kinds, int[] first, int[] second, int[] third, int[] pairs, List<String> names,
+                    List<Primitive> types, int[] roots) {
+        this.kinds = kinds;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        this.size = kinds.length;
+        this.pairs = pairs;
+        this.pairCount = pairs.length / 2;
+        for (String name : names) {
+            this.names.add(name);
+            nameIds.putIfAbsent(name, this.names.size() - 1);
+        }
+        for (Primitive type : types) {
+            this.types.add(type);
+            typeIds.putIfAbsent(type, this.types.size() - 1);
+        }
+        this.roots = roots;
+        for (int node = 0; node < size; node++) {
+            note(TYPES[kinds[node]], first[node], second[node]);
+        }
+    }
+
+    public int add(Expression.Type kind, int first, int second, int third) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            this.first = Arrays.copyOf(this.first, size * 2);
+            this.second = Arrays.copyOf(this.second, size * 2);
+            this.third = Arrays.copyOf(this.third, size * 2);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        this.first[size] = first;
+        this.second[size] = second;
+        this.third[size] = third;
+        note(kind, first, second);
+        return size++;
+    }
+
+    // notes whether a node leaves a type to be inferred, once the pairs it has are in place
+    private void note(Expression.Type kind, int first, int second) {
+        if (kind == Expression.Type.FUNCTION && second < 0) annotated = false;
+        if (kind != Expression.Type.LETREC) return;
+        for (int i = 0; i < second; i++) {
+            if (pairs[(first + second + i) * 2] < 0) annotated = false;
+        }
+    }
+
+    /**
+     * Appends a (name, value node) pair and returns its position.
+     */
+    public int addPair(int name, int node) {
+        if (pairCount * 2 == pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        pairs[pairCount * 2] = name;
+        pairs[pairCount * 2 + 1] = node;
+        return pairCount++;
+    }
+
+    public int name(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        nameIds.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    public int type(Primitive type) {
+        Integer id = typeIds.get(type);
+        if (id != null) return id;
+        typeIds.put(type, types.size());
+        types.add(type);
+        return types.size() - 1;
+    }
+
+    /**
+     * Returns whether every fun in the tree annotates the type of its argument, and every letrec those of its
+     * variables.
+     */
+    public boolean isAnnotated() {
+        return annotated;
+    }
+
+    public void setRoots(int[] roots) {
+        this.roots = roots;
+    }
+
+    public int[] getRoots() {
+        return roots;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Expression.Type kind(int node) {
+        return TYPES[kinds[node]];
+    }
+
+    public int first(int node) {
+        return first[node];
+    }
+
+    public int second(int node) {
+        return second[node];
+    }
+
+    public int third(int node) {
+        return third[node];
+    }
+
+    public int pairName(int pair) {
+        return pairs[pair * 2];
+    }
+
+    public int pairNode(int pair) {
+        return pairs[pair * 2 + 1];
+    }
+
+    public int pairCount() {
+        return pairCount;
+    }
+
+    public String nameOf(int name) {
+        return names.get(name);
+    }
+
+    public int nameCount() {
+        return names.size();
+    }
+
+    public Primitive typeOf(int type) {
+        return types.get(type);
+    }
+
+    public int typeCount() {
+        return types.size();
+    }
+}
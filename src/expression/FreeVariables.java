@@ -0,0 +1,15 @@
+package expression;
+
+/**
+ * The variables a subtree reads from outside itself, each once, in order of first occurrence. The depth and slot
+ * of each are relative to the root of the subtree, so they can be looked up in the frames entered when checking
+ * it; an unbound variable has depth -1.
+ */
+public record FreeVariables(String[] names, int[] depths, int[] slots) {
+
+    public static final FreeVariables NONE = new FreeVariables(new String[0], new int[0], new int[0]);
+
+    public int size() {
+        return names.length;
+    }
+}
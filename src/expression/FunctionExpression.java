@@ -19,6 +19,9 @@ public class FunctionExpression extends Expression {
         return argName;
     }
 
+    /**
+     * Returns the annotated type of the argument, or null if it is left to be inferred.
+     */
     public Primitive getArgType() {
         return argType;
     }
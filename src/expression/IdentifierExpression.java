@@ -0,0 +1,31 @@
+package expression;
+
+public class IdentifierExpression extends Expression {
+
+    // the interned name, and how many frames out and at which slot its binding lives (-1 if it is unbound)
+    private int symbol = -1;
+    private int depth = -1;
+    private int slot = -1;
+
+    public IdentifierExpression(String name) {
+        super(name);
+    }
+
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void resolve(int symbol, int depth, int slot) {
+        this.symbol = symbol;
+        this.depth = depth;
+        this.slot = slot;
+    }
+}
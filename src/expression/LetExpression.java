@@ -1,15 +1,39 @@
 package expression;
 
+import type.Primitive;
+
 import java.util.List;
 
+/**
+ * A let, in which each variable is visible to the values after it and to the body, or a letrec, in which every
+ * variable is visible to every value as well, so the values can refer to each other and to themselves. The values
+ * of a letrec are all funs, so a variable is only ever read once its value exists. A letrec variable may be
+ * annotated with its type, which the checker needs before any value is checked; a letrec that leaves some
+ * annotation out has its types inferred instead (see Inference), like a fun that leaves out its argument type.
+ */
 public class LetExpression extends Expression {
 
     private final List<Value> variables;
+    // the annotated type of each variable of a letrec, null where it is left to be inferred, or null for a let
+    private final List<Primitive> annotations;
     private final Expression body;
+    // which variables repeat an earlier name of the same let, or null if none does
+    private boolean[] redefinitions;
 
     public LetExpression(List<Value> variables, Expression body) {
         super(Type.LET);
         this.variables = variables;
+        this.annotations = null;
+        this.body = body;
+    }
+
+    /**
+     * Creates a letrec whose variables have the given types, each of which is null if it is left to be inferred.
+     */
+    public LetExpression(List<Value> variables, List<Primitive> annotations, Expression body) {
+        super(Type.LETREC);
+        this.variables = variables;
+        this.annotations = annotations;
         this.body = body;
     }
 
@@ -17,7 +41,27 @@ public class LetExpression extends Expression {
         return variables;
     }
 
+    /**
+     * Returns the annotated type of each variable of a letrec, null where it is left to be inferred.
+     */
+    public List<Primitive> getAnnotations() {
+        return annotations;
+    }
+
     public Expression getBody() {
         return body;
     }
+
+    public boolean isRedefinition(int position) {
+        return redefinitions != null && redefinitions[position];
+    }
+
+    public void addRedefinition(int position) {
+        if (redefinitions == null) redefinitions = new boolean[variables.size()];
+        redefinitions[position] = true;
+    }
+
+    public void clearRedefinitions() {
+        redefinitions = null;
+    }
 }
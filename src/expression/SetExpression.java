@@ -4,6 +4,9 @@ public class SetExpression extends Expression {
 
     private final String identifier;
     private final Expression newValue;
+    // how many frames out and at which slot the assigned variable lives (-1 if it is unbound)
+    private int depth = -1;
+    private int slot = -1;
 
     public SetExpression(String identifier, Expression newValue) {
         super(Type.SET);
@@ -18,4 +21,17 @@ public class SetExpression extends Expression {
     public Expression getNewValue() {
         return newValue;
     }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
 }
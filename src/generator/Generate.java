@@ -0,0 +1,77 @@
+package generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a generated program to standard output, for example
+ * <pre>
+ * java generator.Generate --seed 7 --size 100000 --depth 12 --weight set 4
+ * java generator.Generate --shape fun-tower --count 1000000 --ill-typed
+ * java generator.Generate --seed 3 --compound 50 --unannotated 30 --weight app 3 --weight field 3
+ * </pre>
+ * The shapes are let-chain, fun-tower, wide-object and set-sequence, each scaled by --count; without a shape the
+ * random mix is generated. --compound and --unannotated are percentages, of values that are arrows or objects and
+ * of funs that leave their argument type out.
+ */
+public class Generate {
+
+    public static void main(String[] args) throws IOException {
+        long seed = 0;
+        String shape = null;
+        int count = 1000;
+        int size = 1000;
+        int depth = 8;
+        int identifiers = 8;
+        int letWidth = 2;
+        int objectWidth = 4;
+        int compoundTypes = 20;
+        int unannotated = 0;
+        boolean illTyped = false;
+        int[] weights = new int[ProgramGenerator.Construct.values().length];
+        Arrays.fill(weights, 1);
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--shape" -> shape = args[++i];
+                case "--count" -> count = Integer.parseInt(args[++i]);
+                case "--size" -> size = Integer.parseInt(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--identifiers" -> identifiers = Integer.parseInt(args[++i]);
+                case "--let-width" -> letWidth = Integer.parseInt(args[++i]);
+                case "--object-width" -> objectWidth = Integer.parseInt(args[++i]);
+                case "--compound" -> compoundTypes = Integer.parseInt(args[++i]);
+                case "--unannotated" -> unannotated = Integer.parseInt(args[++i]);
+                case "--ill-typed" -> illTyped = true;
+                case "--weight" -> {
+                    ProgramGenerator.Construct construct = ProgramGenerator.Construct.valueOf(args[++i].toUpperCase());
+                    weights[construct.ordinal()] = Integer.parseInt(args[++i]);
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ProgramGenerator generator = new ProgramGenerator(seed).size(size).depth(depth).identifiers(identifiers)
+                .letWidth(letWidth).objectWidth(objectWidth).compoundTypes(compoundTypes).unannotated(unannotated)
+                .illTyped(illTyped);
+        for (ProgramGenerator.Construct construct : ProgramGenerator.Construct.values()) {
+            generator.weight(construct, weights[construct.ordinal()]);
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        if (shape == null) generator.generate(out);
+        else switch (shape) {
+            case "let-chain" -> generator.letChain(out, count);
+            case "fun-tower" -> generator.funTower(out, count);
+            case "wide-object" -> generator.wideObject(out, count);
+            case "set-sequence" -> generator.setSequence(out, count);
+            default -> throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+        out.flush();
+    }
+}
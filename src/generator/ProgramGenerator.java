@@ -0,0 +1,558 @@
+package generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates programs for benchmarks and stress tests, reproducibly from a seed. The random mix builds expressions
+ * top-down for an expected type, drawing each construct by weight, so a program is well-typed by construction;
+ * in ill-typed mode exactly one expression whose type is checked gets a literal of the wrong type instead (or, if
+ * the program ends before one comes up, a last form fails on its own). The shapes below the random mix build the
+ * extreme cases (long let chains, deep fun/app towers, wide objects, long set! sequences) without recursion, so
+ * they can be arbitrarily large.
+ * <p>
+ * Values are numbers and booleans, and, as often as compoundTypes asks, arrows and objects of those: funs passed
+ * around, applied and assigned with set!, and objects whose fields are read. Where an object is passed to a
+ * function, it sometimes has an attribute more than the function asks for, so subtyping is exercised too. Funs
+ * leave their argument type out as often as unannotated asks, for inference; as inference unifies the branches of
+ * a conditional rather than subsuming one under the other, arguments are only widened when every fun is annotated.
+ */
+public class ProgramGenerator {
+
+    public enum Construct {
+        ARITHMETIC,
+        RELATIONAL,
+        LOGICAL,
+        NOT,
+        IF,
+        LET,
+        FUN,
+        APP,
+        BEGIN,
+        SET,
+        OBJECT,
+        FIELD,
+    }
+
+    private enum Kind {
+        NUMBER,
+        BOOLEAN,
+        ARROW,
+        OBJECT,
+    }
+
+    /**
+     * The type an expression is generated for: an arrow has an argument and a result, and an object the types of
+     * its attributes, which are named k0, k1, ... in order. Records compare structurally, so types spelled alike
+     * are equal.
+     */
+    private record Type(Kind kind, Type argument, Type result, List<Type> attributes) {
+    }
+
+    private static final Construct[] CONSTRUCTS = Construct.values();
+    private static final Type NUMBER = new Type(Kind.NUMBER, null, null, null);
+    private static final Type BOOLEAN = new Type(Kind.BOOLEAN, null, null, null);
+    // how deeply arrows and objects nest in the types of values
+    private static final int TYPE_DEPTH = 2;
+
+    private final Random random;
+    private final int[] weights = new int[CONSTRUCTS.length];
+    private int size = 1000;
+    private int depth = 8;
+    private int identifiers = 8;
+    private int letWidth = 2;
+    private int objectWidth = 4;
+    private int compoundTypes = 20;
+    private int unannotated;
+    private boolean illTyped;
+
+    // the variables in scope, innermost last
+    private final List<String> scopeNames = new ArrayList<>();
+    private final List<Type> scopeTypes = new ArrayList<>();
+    private Appendable out;
+    private int budget;
+    private int faultAt;
+    // whether the expression about to be generated is an operand, whose type is checked even under inference
+    private boolean operand;
+
+    public ProgramGenerator(long seed) {
+        this.random = new Random(seed);
+        Arrays.fill(weights, 1);
+    }
+
+    public ProgramGenerator weight(Construct construct, int weight) {
+        weights[construct.ordinal()] = weight;
+        return this;
+    }
+
+    /**
+     * The number of nodes the random mix generates, over as many top-level forms as it takes.
+     */
+    public ProgramGenerator size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * The nesting depth of the random mix; its expressions are generated recursively, so keep this moderate.
+     */
+    public ProgramGenerator depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public ProgramGenerator identifiers(int identifiers) {
+        this.identifiers = identifiers;
+        return this;
+    }
+
+    public ProgramGenerator letWidth(int letWidth) {
+        this.letWidth = letWidth;
+        return this;
+    }
+
+    public ProgramGenerator objectWidth(int objectWidth) {
+        this.objectWidth = objectWidth;
+        return this;
+    }
+
+    /**
+     * The percentage of values (bound by let, passed to a fun, or in the mix on their own) that are arrows or
+     * objects rather than numbers or booleans.
+     */
+    public ProgramGenerator compoundTypes(int percent) {
+        this.compoundTypes = percent;
+        return this;
+    }
+
+    /**
+     * The percentage of funs that leave the type of their argument to be inferred.
+     */
+    public ProgramGenerator unannotated(int percent) {
+        this.unannotated = percent;
+        return this;
+    }
+
+    public ProgramGenerator illTyped(boolean illTyped) {
+        this.illTyped = illTyped;
+        return this;
+    }
+
+    public String generate() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            generate(sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    public void generate(Appendable out) throws IOException {
+        this.out = out;
+        budget = size;
+        faultAt = illTyped ? random.nextInt(size / 2 + 1) : -1;
+
+        while (budget > 0) {
+            expression(randomType(), 1, false);
+            out.append('\n');
+        }
+        if (faultAt >= 0) out.append("(+ 1 #true)\n");
+    }
+
+    /**
+     * (let ([a 0] [b (+ a 1)] [c (+ b 1)] ...) z): one let with the given number of bindings, each reading the
+     * one before it.
+     */
+    public void letChain(Appendable out, int length) throws IOException {
+        // the first binding reads nothing, so an ill-typed chain needs a second one to go wrong in
+        if (illTyped) length = Math.max(length, 2);
+        int fault = illTyped ? 1 + random.nextInt(length - 1) : -1;
+        out.append("(let ([").append(name('w', 0)).append(" 0]");
+        for (int i = 1; i < length; i++) {
+            out.append(" [").append(name('w', i)).append(" (+ ").append(name('w', i - 1))
+                    .append(i == fault ? " #true)]" : " 1)]");
+        }
+        out.append(") ").append(name('w', length - 1)).append(")\n");
+    }
+
+    /**
+     * (app (fun (x : num) (app (fun (x : num) ... x) 0)) 0): applications nested the given number of levels deep.
+     */
+    public void funTower(Appendable out, int levels) throws IOException {
+        int fault = illTyped ? random.nextInt(levels) : -1;
+        for (int i = 0; i < levels; i++) {
+            out.append("(app (fun (x : num) ");
+        }
+        out.append('x');
+        for (int i = levels - 1; i >= 0; i--) {
+            out.append(i == fault ? ") #true)" : ") 0)");
+        }
+        out.append('\n');
+    }
+
+    /**
+     * (+ 1 (field (object [a 0] [b 1] ...) k)): one object with the given number of fields, one of them read.
+     */
+    public void wideObject(Appendable out, int fields) throws IOException {
+        fields = Math.max(fields, 1);
+        int read = random.nextInt(fields);
+        out.append("(+ 1 (field (object");
+        for (int i = 0; i < fields; i++) {
+            out.append(" [").append(name('k', i)).append(' ');
+            out.append(i == read && illTyped ? "#true" : Integer.toString(i)).append(']');
+        }
+        out.append(") ").append(name('k', read)).append("))\n");
+    }
+
+    /**
+     * (let ([x 0]) (begin (set! x 1) (begin (set! x 2) ... x))): a sequence of the given number of assignments.
+     */
+    public void setSequence(Appendable out, int length) throws IOException {
+        int fault = illTyped ? random.nextInt(length) : -1;
+        out.append("(let ([x 0]) ");
+        for (int i = 0; i < length; i++) {
+            out.append("(begin (set! x ").append(i == fault ? "#true" : Integer.toString(i)).append(") ");
+        }
+        out.append('x');
+        for (int i = 0; i < length; i++) {
+            out.append(')');
+        }
+        out.append(")\n");
+    }
+
+    /**
+     * Appends an expression of the given type. An expression is checked if a type error anywhere in its type
+     * would surface, which is where the fault of an ill-typed program goes. Where funs are inferred, a type can
+     * fit whatever an expression holds, so there only operands get the fault.
+     */
+    private void expression(Type type, int level, boolean checked) throws IOException {
+        budget--;
+        boolean strict = operand || unannotated == 0;
+        operand = false;
+        if (checked && strict && faultAt >= 0 && size - budget > faultAt) {
+            faultAt = -1;
+            literal(type.kind() == Kind.NUMBER ? BOOLEAN : NUMBER);
+            return;
+        }
+        Construct construct = level >= depth || budget <= 0 ? null : pick(type);
+        if (construct == null) {
+            leaf(type, level, checked);
+            return;
+        }
+
+        switch (construct) {
+            case ARITHMETIC -> binary(new String[]{"+", "-", "*", "/"}, NUMBER, level);
+            case RELATIONAL -> binary(new String[]{"<", ">", "="}, NUMBER, level);
+            case LOGICAL -> binary(new String[]{"and", "or"}, BOOLEAN, level);
+            case NOT -> {
+                out.append("(not ");
+                operand(BOOLEAN, level + 1);
+                out.append(')');
+            }
+            case IF -> {
+                out.append("(if ");
+                operand(BOOLEAN, level + 1);
+                out.append(' ');
+                expression(type, level + 1, true);
+                out.append(' ');
+                expression(type, level + 1, true);
+                out.append(')');
+            }
+            case LET -> {
+                // consecutive names, so no name repeats within the let
+                int count = Math.min(letWidth, identifiers);
+                int first = random.nextInt(identifiers);
+                out.append("(let (");
+                for (int i = 0; i < count; i++) {
+                    Type valueType = randomType();
+                    out.append(i == 0 ? "[" : " [").append(name('w', (first + i) % identifiers)).append(' ');
+                    // each value sees the bindings before it
+                    expression(valueType, level + 1, false);
+                    bind(name('w', (first + i) % identifiers), valueType);
+                    out.append(']');
+                }
+                out.append(") ");
+                expression(type, level + 1, checked);
+                out.append(')');
+                unbind(count);
+            }
+            case FUN -> {
+                if (type.kind() == Kind.ARROW) {
+                    fun(type, level, checked);
+                    return;
+                }
+                // a fun applied on the spot, for a type no fun has
+                Type argument = randomType();
+                boolean annotated = random.nextInt(100) >= unannotated;
+                String parameter = name('w', random.nextInt(identifiers));
+                out.append("(app (fun (").append(parameter);
+                if (annotated) annotation(argument);
+                out.append(") ");
+                bind(parameter, argument);
+                expression(type, level + 1, checked);
+                unbind(1);
+                out.append(") ");
+                // an unannotated fun that never uses its argument accepts anything, so there a fault would not show
+                argument(argument, level + 1, annotated);
+                out.append(')');
+            }
+            case APP -> {
+                Type argument = randomType();
+                out.append("(app ");
+                // the result of the function is only checked where that of the application is
+                expression(new Type(Kind.ARROW, argument, type, null), level + 1, checked);
+                out.append(' ');
+                argument(argument, level + 1, unannotated == 0);
+                out.append(')');
+            }
+            case BEGIN -> {
+                out.append("(begin ");
+                expression(randomType(), level + 1, false);
+                out.append(' ');
+                expression(type, level + 1, checked);
+                out.append(')');
+            }
+            case SET -> {
+                int variable = visibleVariable(null);
+                out.append("(begin (set! ").append(scopeNames.get(variable)).append(' ');
+                expression(scopeTypes.get(variable), level + 1, true);
+                out.append(") ");
+                expression(type, level + 1, checked);
+                out.append(')');
+            }
+            case OBJECT -> {
+                if (type.kind() == Kind.OBJECT) {
+                    object(type, level, checked);
+                    return;
+                }
+                // a field read on the spot from an object of scalars, for a type that is not an object
+                int width = Math.max(objectWidth, 1);
+                int read = random.nextInt(width);
+                out.append("(field (object");
+                for (int i = 0; i < width; i++) {
+                    out.append(" [").append(name('k', i)).append(' ');
+                    if (i == read) expression(type, level + 1, checked);
+                    else expression(random.nextBoolean() ? NUMBER : BOOLEAN, level + 1, false);
+                    out.append(']');
+                }
+                out.append(") ").append(name('k', read)).append(')');
+            }
+            case FIELD -> {
+                // any expression of an object type that has the field, not only an object built on the spot
+                int width = 1 + random.nextInt(Math.max(objectWidth, 1));
+                int read = random.nextInt(width);
+                List<Type> attributes = new ArrayList<>(width);
+                for (int i = 0; i < width; i++) {
+                    attributes.add(i == read ? type : randomType(TYPE_DEPTH - 1));
+                }
+                out.append("(field ");
+                // only the attribute read is checked, which the object's own type does not tell apart
+                expression(new Type(Kind.OBJECT, null, null, attributes), level + 1, false);
+                out.append(' ').append(name('k', read)).append(')');
+            }
+        }
+    }
+
+    private void binary(String[] operators, Type operands, int level) throws IOException {
+        out.append('(').append(operators[random.nextInt(operators.length)]).append(' ');
+        operand(operands, level + 1);
+        out.append(' ');
+        operand(operands, level + 1);
+        out.append(')');
+    }
+
+    private void operand(Type type, int level) throws IOException {
+        operand = true;
+        expression(type, level, true);
+    }
+
+    /**
+     * (fun (x : A) body): a fun of the given arrow type, annotated unless it is drawn to be inferred.
+     */
+    private void fun(Type arrow, int level, boolean checked) throws IOException {
+        String parameter = name('w', random.nextInt(identifiers));
+        out.append("(fun (").append(parameter);
+        if (random.nextInt(100) >= unannotated) annotation(arrow.argument());
+        out.append(") ");
+        bind(parameter, arrow.argument());
+        expression(arrow.result(), level + 1, checked);
+        unbind(1);
+        out.append(')');
+    }
+
+    /**
+     * (object [k0 a] [k1 b] ...): an object of the given object type.
+     */
+    private void object(Type object, int level, boolean checked) throws IOException {
+        out.append("(object");
+        for (int i = 0; i < object.attributes().size(); i++) {
+            out.append(" [").append(name('k', i)).append(' ');
+            expression(object.attributes().get(i), level + 1, checked);
+            out.append(']');
+        }
+        out.append(')');
+    }
+
+    /**
+     * Appends the argument of an application. Where an object is expected and every fun is annotated, it is
+     * sometimes given an attribute more, which the checker has to accept by width subtyping; nothing checks that
+     * attribute, so such an argument is not checked.
+     */
+    private void argument(Type type, int level, boolean checked) throws IOException {
+        if (type.kind() == Kind.OBJECT && unannotated == 0 && random.nextBoolean()) {
+            List<Type> attributes = new ArrayList<>(type.attributes());
+            attributes.add(random.nextBoolean() ? NUMBER : BOOLEAN);
+            type = new Type(Kind.OBJECT, null, null, attributes);
+            checked = false;
+        }
+        expression(type, level, checked);
+    }
+
+    private void annotation(Type type) throws IOException {
+        out.append(" : ");
+        typeName(type);
+    }
+
+    private void typeName(Type type) throws IOException {
+        switch (type.kind()) {
+            case NUMBER -> out.append("num");
+            case BOOLEAN -> out.append("bool");
+            case ARROW -> {
+                out.append("(-> ");
+                typeName(type.argument());
+                out.append(' ');
+                typeName(type.result());
+                out.append(')');
+            }
+            case OBJECT -> {
+                out.append("(object");
+                for (int i = 0; i < type.attributes().size(); i++) {
+                    out.append(" [").append(name('k', i)).append(' ');
+                    typeName(type.attributes().get(i));
+                    out.append(']');
+                }
+                out.append(')');
+            }
+        }
+    }
+
+    /**
+     * Draws a construct that can produce the given type, by weight, or returns null if none can.
+     */
+    private Construct pick(Type type) {
+        int total = 0;
+        for (Construct c : CONSTRUCTS) {
+            if (produces(c, type)) total += weights[c.ordinal()];
+        }
+        if (total <= 0) return null;
+
+        int draw = random.nextInt(total);
+        for (Construct c : CONSTRUCTS) {
+            if (!produces(c, type)) continue;
+            draw -= weights[c.ordinal()];
+            if (draw < 0) return c;
+        }
+        return null;
+    }
+
+    private boolean produces(Construct construct, Type type) {
+        return switch (construct) {
+            case ARITHMETIC -> type.kind() == Kind.NUMBER;
+            case RELATIONAL, LOGICAL, NOT -> type.kind() == Kind.BOOLEAN;
+            case SET -> hasVisibleVariable();
+            default -> true;
+        };
+    }
+
+    /**
+     * Appends a variable of the given type, or else the smallest value of it: a literal, or a fun or object
+     * whose own parts are leaves.
+     */
+    private void leaf(Type type, int level, boolean checked) throws IOException {
+        int variable = random.nextBoolean() ? visibleVariable(type) : -1;
+        if (variable >= 0) {
+            out.append(scopeNames.get(variable));
+            return;
+        }
+        switch (type.kind()) {
+            case NUMBER, BOOLEAN -> literal(type);
+            case ARROW -> fun(type, level, checked);
+            case OBJECT -> object(type, level, checked);
+        }
+    }
+
+    private void literal(Type type) throws IOException {
+        if (type.kind() == Kind.NUMBER) out.append(Integer.toString(random.nextInt(100)));
+        else out.append(random.nextBoolean() ? "#true" : "#false");
+    }
+
+    /**
+     * Returns the scope position of a variable that is not shadowed (of the given type, unless null), starting
+     * from a random one, or -1 if there is none.
+     */
+    private int visibleVariable(Type type) {
+        int count = scopeNames.size();
+        if (count == 0) return -1;
+        int start = random.nextInt(count);
+        for (int k = 0; k < count; k++) {
+            int i = (start + k) % count;
+            if (type != null && !scopeTypes.get(i).equals(type)) continue;
+            if (scopeNames.lastIndexOf(scopeNames.get(i)) == i) return i;
+        }
+        return -1;
+    }
+
+    private boolean hasVisibleVariable() {
+        // the innermost binding is never shadowed
+        return !scopeNames.isEmpty();
+    }
+
+    private Type randomType() {
+        return randomType(TYPE_DEPTH);
+    }
+
+    /**
+     * Draws the type of a value, an arrow or object (nested at most the given number of levels) as often as
+     * compoundTypes asks and otherwise a number or a boolean.
+     */
+    private Type randomType(int depth) {
+        if (depth == 0 || random.nextInt(100) >= compoundTypes) return random.nextBoolean() ? NUMBER : BOOLEAN;
+        if (random.nextBoolean()) return new Type(Kind.ARROW, randomType(depth - 1), randomType(depth - 1), null);
+
+        int width = 1 + random.nextInt(Math.max(objectWidth, 1));
+        List<Type> attributes = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            attributes.add(randomType(depth - 1));
+        }
+        return new Type(Kind.OBJECT, null, null, attributes);
+    }
+
+    private void bind(String name, Type type) {
+        scopeNames.add(name);
+        scopeTypes.add(type);
+    }
+
+    private void unbind(int count) {
+        for (int i = 0; i < count; i++) {
+            scopeNames.remove(scopeNames.size() - 1);
+            scopeTypes.remove(scopeTypes.size() - 1);
+        }
+    }
+
+    /**
+     * Spells the index in letters, since identifiers cannot contain digits. The prefixes used start no keyword,
+     * so no name can turn out to be one.
+     */
+    static String name(char prefix, int index) {
+        StringBuilder name = new StringBuilder().append(prefix);
+        do {
+            name.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package interpreter;
+
+import expression.*;
+import type.Primitive;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of the outcomes of closed subterms, shared by every checker in the process. A closed subterm
+ * reads no variable from outside itself, so its type (or its errors) is the same wherever it appears and can
+ * be reused across programs, which pays off when many submissions share the same library definitions. Entries
+ * are addressed by the 128-bit structural hash the resolver computes and evicted least recently used first.
+ * <p>
+ * The hash is not keyed, so two different subterms could be made to hash alike. Every entry therefore keeps the
+ * subterm it was found for, and a subterm that hashes alike is only answered from it if the two have the same
+ * structure, compared on what the hash covers. The subterms kept are bounded in total size as well as number.
+ */
+public class ClosedTermCache {
+
+    // subterms smaller than this are cheaper to check again than to look up
+    public static final int MIN_SIZE = 32;
+
+    private static final ClosedTermCache SHARED = new ClosedTermCache(4096, 1 << 22);
+
+    /**
+     * A cached outcome: the type of the subterm and the errors found in it, in order. The type is null if checking
+     * stopped at the first error, in which case that is the only one known.
+     */
+    public record Outcome(Primitive type, List<String> errors) {
+    }
+
+    private record Key(long high, long low) {
+    }
+
+    private record Entry(Expression term, Outcome outcome) {
+    }
+
+    // a lock rather than synchronized, since checkers may run on virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int capacity;
+    private final long maxNodes;
+    // the sizes of the subterms kept, counting a subterm inside another kept one twice
+    private long nodes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache of at most the given number of entries, whose subterms add up to at most the given number
+     * of nodes.
+     */
+    public ClosedTermCache(int capacity, long maxNodes) {
+        this.capacity = capacity;
+        this.maxNodes = maxNodes;
+    }
+
+    public static ClosedTermCache shared() {
+        return SHARED;
+    }
+
+    public Outcome get(Expression e) {
+        Key key = new Key(e.getHashHigh(), e.getHashLow());
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+
+        // compared outside the lock, since the subterms of an entry are no longer changed by anything
+        Outcome outcome = entry != null && sameStructure(entry.term(), e) ? entry.outcome() : null;
+        lock.lock();
+        try {
+            if (outcome == null) misses++;
+            else hits++;
+        } finally {
+            lock.unlock();
+        }
+        return outcome;
+    }
+
+    public void put(Expression e, Outcome outcome) {
+        Key key = new Key(e.getHashHigh(), e.getHashLow());
+        lock.lock();
+        try {
+            Entry replaced = entries.put(key, new Entry(e, outcome));
+            if (replaced != null) nodes -= replaced.term().getSize();
+            nodes += e.getSize();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > capacity || nodes > maxNodes && entries.size() > 1) {
+                nodes -= eldest.next().term().getSize();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether two resolved subterms have the same structure as far as the resolver's hash tells them
+     * apart: the same kinds, references to the same frames and slots, and the same names and annotations where
+     * the hash has them. Two such subterms check alike.
+     */
+    private static boolean sameStructure(Expression a, Expression b) {
+        if (a == b) return true;
+        List<Expression> left = new ArrayList<>();
+        List<Expression> right = new ArrayList<>();
+        left.add(a);
+        right.add(b);
+        while (!left.isEmpty()) {
+            Expression x = left.remove(left.size() - 1);
+            Expression y = right.remove(right.size() - 1);
+            if (x == y) continue;
+            if (x.getType() != y.getType() || x.getSize() != y.getSize()) return false;
+            switch (x.getType()) {
+                case NUMBER, BOOLEAN -> {
+                }
+                case IDENTIFIER -> {
+                    IdentifierExpression i = (IdentifierExpression) x;
+                    IdentifierExpression j = (IdentifierExpression) y;
+                    if (i.getDepth() != j.getDepth() || i.getSlot() != j.getSlot()) return false;
+                }
+                case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                    BinaryExpression i = (BinaryExpression) x;
+                    BinaryExpression j = (BinaryExpression) y;
+                    left.add(i.getLeft());
+                    right.add(j.getLeft());
+                    left.add(i.getRight());
+                    right.add(j.getRight());
+                }
+                case UNARY -> {
+                    left.add(((UnaryExpression) x).getOperand());
+                    right.add(((UnaryExpression) y).getOperand());
+                }
+                case CONDITIONAL -> {
+                    ConditionalExpression i = (ConditionalExpression) x;
+                    ConditionalExpression j = (ConditionalExpression) y;
+                    left.add(i.getCondition());
+                    right.add(j.getCondition());
+                    left.add(i.getConsequent());
+                    right.add(j.getConsequent());
+                    left.add(i.getAlternate());
+                    right.add(j.getAlternate());
+                }
+                case LET, LETREC -> {
+                    LetExpression i = (LetExpression) x;
+                    LetExpression j = (LetExpression) y;
+                    if (i.getVariables().size() != j.getVariables().size()) return false;
+                    for (int k = 0; k < i.getVariables().size(); k++) {
+                        if (i.isRedefinition(k) != j.isRedefinition(k)) return false;
+                        if (i.isRedefinition(k) && !i.getVariables().get(k).id().equals(j.getVariables().get(k).id())) {
+                            return false;
+                        }
+                        if (i.getType() == Expression.Type.LETREC
+                                && i.getAnnotations().get(k) != j.getAnnotations().get(k)) {
+                            return false;
+                        }
+                        left.add(i.getVariables().get(k).value());
+                        right.add(j.getVariables().get(k).value());
+                    }
+                    left.add(i.getBody());
+                    right.add(j.getBody());
+                }
+                case FUNCTION -> {
+                    FunctionExpression i = (FunctionExpression) x;
+                    FunctionExpression j = (FunctionExpression) y;
+                    if (i.getArgType() != j.getArgType()) return false;
+                    left.add(i.getBody());
+                    right.add(j.getBody());
+                }
+                case SET -> {
+                    SetExpression i = (SetExpression) x;
+                    SetExpression j = (SetExpression) y;
+                    if (i.getDepth() != j.getDepth() || i.getSlot() != j.getSlot()) return false;
+                    left.add(i.getNewValue());
+                    right.add(j.getNewValue());
+                }
+                case OBJECT -> {
+                    List<Value> i = ((ObjectExpression) x).getAttributes();
+                    List<Value> j = ((ObjectExpression) y).getAttributes();
+                    if (i.size() != j.size()) return false;
+                    for (int k = 0; k < i.size(); k++) {
+                        if (!i.get(k).id().equals(j.get(k).id())) return false;
+                        left.add(i.get(k).value());
+                        right.add(j.get(k).value());
+                    }
+                }
+                case FIELD -> {
+                    FieldExpression i = (FieldExpression) x;
+                    FieldExpression j = (FieldExpression) y;
+                    if (!i.getAttribute().equals(j.getAttribute())) return false;
+                    left.add(i.getObject());
+                    right.add(j.getObject());
+                }
+            }
+        }
+        return true;
+    }
+}
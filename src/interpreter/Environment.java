@@ -0,0 +1,112 @@
+package interpreter;
+
+import java.util.Arrays;
+
+/**
+ * Lexically scoped bindings of interned symbols. Every binding records the scope and the slot within that scope it
+ * was made in, and links to the binding of the same symbol it shadows. Bindings are kept on a trail in the order
+ * they were made, so leaving a scope pops its bindings and restores whatever they shadowed. Entering and leaving a
+ * scope never copies anything, and only the bindings of live scopes are kept.
+ */
+public class Environment {
+
+    // the innermost binding of each symbol, as an index into the trail, or -1
+    private int[] innermost = new int[16];
+    private int[] trailSymbols = new int[16];
+    private int[] trailShadowed = new int[16];
+    private int[] trailScopes = new int[16];
+    private int trailSize;
+    private int[] scopeStarts = new int[16];
+    private int depth;
+
+    public Environment() {
+        Arrays.fill(innermost, -1);
+    }
+
+    public void enterScope() {
+        if (depth == scopeStarts.length) scopeStarts = Arrays.copyOf(scopeStarts, depth * 2);
+        scopeStarts[depth++] = trailSize;
+    }
+
+    public void exitScope() {
+        int start = scopeStarts[--depth];
+        while (trailSize > start) {
+            trailSize--;
+            innermost[trailSymbols[trailSize]] = trailShadowed[trailSize];
+        }
+    }
+
+    /**
+     * Leaves every scope still entered, as when an error abandons the expressions that entered them.
+     */
+    public void exitAll() {
+        while (depth > 0) {
+            exitScope();
+        }
+    }
+
+    /**
+     * Binds the given symbol in the innermost scope and returns the slot of the binding within that scope.
+     */
+    public int bind(int symbol) {
+        if (symbol >= innermost.length) {
+            int length = innermost.length;
+            innermost = Arrays.copyOf(innermost, Math.max(length * 2, symbol + 1));
+            Arrays.fill(innermost, length, innermost.length, -1);
+        }
+        if (trailSize == trailSymbols.length) {
+            trailSymbols = Arrays.copyOf(trailSymbols, trailSize * 2);
+            trailShadowed = Arrays.copyOf(trailShadowed, trailSize * 2);
+            trailScopes = Arrays.copyOf(trailScopes, trailSize * 2);
+        }
+        trailSymbols[trailSize] = symbol;
+        trailShadowed[trailSize] = innermost[symbol];
+        trailScopes[trailSize] = depth;
+        innermost[symbol] = trailSize;
+        trailSize++;
+        return trailSize - 1 - scopeStarts[depth - 1];
+    }
+
+    /**
+     * Returns whether the given symbol is bound by the innermost scope itself (rather than one enclosing it).
+     */
+    public boolean isBoundInScope(int symbol) {
+        int binding = find(symbol);
+        return binding >= 0 && trailScopes[binding] == depth;
+    }
+
+    /**
+     * Returns the position of the innermost binding of the given symbol among all live bindings (the order they
+     * were made in), or -1 if it is unbound.
+     */
+    public int lookup(int symbol) {
+        return find(symbol);
+    }
+
+    /**
+     * Returns how many scopes out from the innermost one the given symbol is bound, or -1 if it is unbound.
+     */
+    public int lookupDepth(int symbol) {
+        int binding = find(symbol);
+        return binding < 0 ? -1 : depth - trailScopes[binding];
+    }
+
+    /**
+     * Returns the slot of the innermost binding of the given symbol within its scope, or -1 if it is unbound.
+     */
+    public int lookupSlot(int symbol) {
+        int binding = find(symbol);
+        return binding < 0 ? -1 : binding - scopeStarts[trailScopes[binding] - 1];
+    }
+
+    /**
+     * Returns the number of bindings currently visible or shadowed.
+     */
+    public int size() {
+        return trailSize;
+    }
+
+    private int find(int symbol) {
+        return symbol < innermost.length ? innermost[symbol] : -1;
+    }
+}
@@ -0,0 +1,48 @@
+package interpreter;
+
+import type.Primitive;
+import type.TruePrimitive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The messages of the type errors found so far, in the order they were found. Errors are reported here as
+ * values rather than thrown, so the checkers decide for themselves whether to stop at the first one or carry on.
+ */
+final class ErrorLog {
+
+    private final List<String> messages = new ArrayList<>();
+
+    /**
+     * Records an error and returns the error type, for the construct it is reported for.
+     */
+    Primitive report(String message) {
+        messages.add(message);
+        return TruePrimitive.ERROR;
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    String get(int index) {
+        return messages.get(index);
+    }
+
+    /**
+     * Returns the errors reported since the log had the given size.
+     */
+    List<String> since(int size) {
+        return size == messages.size() ? List.of() : List.copyOf(messages.subList(size, messages.size()));
+    }
+
+    List<String> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    void clear() {
+        messages.clear();
+    }
+}
@@ -0,0 +1,357 @@
+package interpreter;
+
+import expression.Expression;
+import expression.FlatTree;
+import type.Attribute;
+import type.ObjectType;
+import type.Primitive;
+import type.TruePrimitive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks a FlatTree by walking it by index, with the same rules and results as TypeChecker. Names are resolved as
+ * they are reached rather than in a pass of their own: the tree numbers its names densely, so they serve as the
+ * symbols of an Environment directly, and the type of each live binding is kept at the binding's position in the
+ * environment. Nothing is allocated per node; only building arrow and object types does.
+ * <p>
+ * Errors are reported to an ErrorLog rather than thrown. Checking stops at the first one unless all errors are
+ * wanted, in which case the failing node gets the error type and checking carries on.
+ * <p>
+ * Only trees whose every fun annotates its argument can be checked here; inference is done on expressions, so a
+ * tree that leaves any argument type out is checked by TypeChecker instead (see FlatTree.isAnnotated).
+ */
+public class FlatChecker {
+
+    private final FlatTree tree;
+    private final Environment environment = new Environment();
+    private final ErrorLog errors = new ErrorLog();
+    private final boolean allErrors;
+    // the type of every live binding, in the order the environment made them
+    private Primitive[] bindings = new Primitive[16];
+    private int peakEnvironment;
+    // the nodes being checked, innermost last, with their kinds, the number of steps each has taken and where its
+    // type goes
+    private int[] work = new int[16];
+    private Expression.Type[] kinds = new Expression.Type[16];
+    private int[] steps = new int[16];
+    private int[] targets = new int[16];
+    private int workSize;
+    // the types of checked children whose parents have not taken them yet
+    private Primitive[] results = new Primitive[16];
+    private int resultCount;
+
+    private FlatChecker(FlatTree tree, boolean allErrors) {
+        if (!tree.isAnnotated()) throw new IllegalArgumentException("the tree leaves argument types to be inferred");
+        this.tree = tree;
+        this.allErrors = allErrors;
+    }
+
+    public static String run(FlatTree tree) {
+        return run(tree, null);
+    }
+
+    /**
+     * Checks the tree like run, raising the given peak to the largest number of bindings that were live at once
+     * unless it is null.
+     */
+    public static String run(FlatTree tree, AtomicInteger peakEnvironment) {
+        FlatChecker checker = new FlatChecker(tree, false);
+        Primitive type = null;
+        String result = null;
+        for (int root : tree.getRoots()) {
+            type = checker.check(root);
+            if (checker.errors.size() > 0) {
+                result = TypeChecker.makeNewError(checker.errors.get(0));
+                break;
+            }
+        }
+        if (peakEnvironment != null) peakEnvironment.accumulateAndGet(checker.peakEnvironment, Math::max);
+        if (result != null) return result;
+        return type == null ? "" : TypeChecker.makeNewType(type);
+    }
+
+    /**
+     * Checks the expressions in order and writes the line for each to out as soon as it has been checked, the
+     * same way TypeChecker.runEach does.
+     */
+    public static void runEach(FlatTree tree, boolean allErrors, Appendable out) throws IOException {
+        FlatChecker checker = new FlatChecker(tree, allErrors);
+        for (int root : tree.getRoots()) {
+            int from = checker.errors.size();
+            Primitive type = checker.check(root);
+            if (TypeChecker.writeLines(checker.errors, from, allErrors, type, out) && !allErrors) break;
+        }
+    }
+
+    /**
+     * Checks every expression, carrying on past errors, and returns a line for each error in the order they were
+     * found, or the type of the last expression if there were none.
+     */
+    public static List<String> runAll(FlatTree tree) {
+        FlatChecker checker = new FlatChecker(tree, true);
+        Primitive type = null;
+        for (int root : tree.getRoots()) {
+            type = checker.check(root);
+        }
+        return TypeChecker.makeNewLines(checker.errors, type);
+    }
+
+    /**
+     * Checks a node without recursing, the same way TypeChecker does: every node being checked has a frame on the
+     * work stack with the number of steps it has taken and the slot of the result stack its type goes to.
+     */
+    private Primitive check(int root) {
+        int target = reserve(1);
+        visitInto(root, target);
+        while (workSize > 0) {
+            int top = workSize - 1;
+            Primitive type = resume(work[top], kinds[top], steps[top]++);
+            if (!allErrors && errors.size() > 0) {
+                workSize = 0;
+                release(resultCount);
+                environment.exitAll();
+                return TruePrimitive.ERROR;
+            }
+            if (type == null) continue;
+            results[targets[top]] = type;
+            workSize--;
+        }
+        return take();
+    }
+
+    /**
+     * Takes the next step of checking a node, given how many steps it has taken already: returns its type, or
+     * visits the children to check next and returns null. Children are visited all at once where no binding
+     * changes between them, and one at a time where one does.
+     */
+    private Primitive resume(int node, Expression.Type kind, int step) {
+        switch (kind) {
+            case NUMBER -> {
+                return TruePrimitive.NUMBER;
+            }
+            case BOOLEAN -> {
+                return TruePrimitive.BOOLEAN;
+            }
+            case IDENTIFIER -> {
+                return variable(tree.first(node));
+            }
+            case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                if (step == 0) return visitBoth(tree.first(node), tree.second(node));
+                Primitive left = results[resultCount - 2];
+                Primitive right = results[resultCount - 1];
+                release(2);
+                return switch (kind) {
+                    case ARITHMETIC -> TypeRules.arithmeticRelational(left, right, Primitive.Type.NUMBER, errors);
+                    case RELATIONAL -> TypeRules.arithmeticRelational(left, right, Primitive.Type.BOOLEAN, errors);
+                    case LOGICAL -> TypeRules.logical(left, right, errors);
+                    case APP -> TypeRules.app(left, right, errors);
+                    default -> right;
+                };
+            }
+            case UNARY -> {
+                if (step == 0) return visit(tree.first(node));
+                return TypeRules.unary(take(), errors);
+            }
+            case CONDITIONAL -> {
+                if (step == 0) {
+                    int base = reserve(3);
+                    visitInto(tree.third(node), base + 2);
+                    visitInto(tree.second(node), base + 1);
+                    visitInto(tree.first(node), base);
+                    return null;
+                }
+                Primitive condition = results[resultCount - 3];
+                Primitive consequent = results[resultCount - 2];
+                Primitive alternate = results[resultCount - 1];
+                release(3);
+                return TypeRules.conditional(condition, consequent, alternate, errors);
+            }
+            case LET -> {
+                return resumeLet(node, step);
+            }
+            case LETREC -> {
+                return resumeLetrec(node, step);
+            }
+            case FUNCTION -> {
+                Primitive argType = tree.typeOf(tree.second(node));
+                if (step == 0) {
+                    environment.enterScope();
+                    bind(tree.first(node), argType);
+                    return visit(tree.third(node));
+                }
+                environment.exitScope();
+                return TypeRules.function(argType, take());
+            }
+            case SET -> {
+                int binding = environment.lookup(tree.first(node));
+                if (step == 0) {
+                    if (binding < 0) TypeRules.unbound(errors);
+                    return visit(tree.second(node));
+                }
+                if (binding < 0) {
+                    release(1);
+                    return TruePrimitive.VOID;
+                }
+                return TypeRules.set(bindings[binding], take(), errors);
+            }
+            case OBJECT -> {
+                int first = tree.first(node);
+                int count = tree.second(node);
+                if (step == 0) {
+                    int base = reserve(count);
+                    for (int i = count - 1; i >= 0; i--) {
+                        visitInto(tree.pairNode(first + i), base + i);
+                    }
+                    return null;
+                }
+                List<Attribute> attributes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String name = tree.nameOf(tree.pairName(first + i));
+                    attributes.add(new Attribute(name, results[resultCount - count + i]));
+                }
+                release(count);
+                return TypeRules.object(attributes);
+            }
+            case FIELD -> {
+                if (step == 0) return visit(tree.first(node));
+                ObjectType object = TypeRules.fieldObject(take(), errors);
+                if (object == null) return TruePrimitive.ERROR;
+                int slot = TypeRules.fieldSlot(object, tree.nameOf(tree.second(node)), errors);
+                return slot < 0 ? TruePrimitive.ERROR : object.getAttributes().get(slot).type();
+            }
+        }
+        throw new IllegalStateException(kind.toString());
+    }
+
+    private Primitive resumeLet(int node, int step) {
+        // each variable is visible to the ones after it, so each is bound right after its value is checked
+        int count = tree.second(node);
+        if (step > count) {
+            environment.exitScope();
+            return take();
+        }
+
+        if (step == 0) environment.enterScope();
+        else bind(tree.pairName(tree.first(node) + step - 1), take());
+
+        if (step == count) return visit(tree.third(node));
+        int name = tree.pairName(tree.first(node) + step);
+        if (environment.isBoundInScope(name)) TypeRules.redefinition(tree.nameOf(name), errors);
+        return visit(tree.pairNode(tree.first(node) + step));
+    }
+
+    private Primitive resumeLetrec(int node, int step) {
+        // every variable is bound to its annotation before any value is checked, and the pairs after the
+        // variables' own hold the annotations
+        int first = tree.first(node);
+        int count = tree.second(node);
+        if (step > count) {
+            environment.exitScope();
+            return take();
+        }
+
+        if (step == 0) {
+            environment.enterScope();
+            for (int i = 0; i < count; i++) {
+                int name = tree.pairName(first + i);
+                if (environment.isBoundInScope(name)) TypeRules.redefinition(tree.nameOf(name), errors);
+                bind(name, tree.typeOf(tree.pairName(first + count + i)));
+            }
+        } else {
+            TypeRules.binding(tree.typeOf(tree.pairName(first + count + step - 1)), take(), errors);
+        }
+
+        if (step == count) return visit(tree.third(node));
+        return visit(tree.pairNode(first + step));
+    }
+
+    /**
+     * Visits one child into a new slot of the result stack and returns null, the type of a node still being
+     * checked.
+     */
+    private Primitive visit(int node) {
+        visitInto(node, reserve(1));
+        return null;
+    }
+
+    private Primitive visitBoth(int left, int right) {
+        int base = reserve(2);
+        // the left one goes on top, so it is checked first
+        visitInto(right, base + 1);
+        visitInto(left, base);
+        return null;
+    }
+
+    /**
+     * Stores the type of a leaf that cannot fail in the given slot right away, and pushes a frame for checking
+     * anything else into it.
+     */
+    private void visitInto(int node, int target) {
+        Expression.Type kind = tree.kind(node);
+        switch (kind) {
+            case NUMBER -> {
+                results[target] = TruePrimitive.NUMBER;
+                return;
+            }
+            case BOOLEAN -> {
+                results[target] = TruePrimitive.BOOLEAN;
+                return;
+            }
+            case IDENTIFIER -> {
+                int binding = environment.lookup(tree.first(node));
+                if (binding >= 0) {
+                    results[target] = bindings[binding];
+                    return;
+                }
+            }
+        }
+        if (workSize == work.length) grow();
+        work[workSize] = node;
+        kinds[workSize] = kind;
+        steps[workSize] = 0;
+        targets[workSize++] = target;
+    }
+
+    private void grow() {
+        work = Arrays.copyOf(work, workSize * 2);
+        kinds = Arrays.copyOf(kinds, workSize * 2);
+        steps = Arrays.copyOf(steps, workSize * 2);
+        targets = Arrays.copyOf(targets, workSize * 2);
+    }
+
+    private int reserve(int count) {
+        if (resultCount + count > results.length) {
+            results = Arrays.copyOf(results, Math.max(results.length * 2, resultCount + count));
+        }
+        resultCount += count;
+        return resultCount - count;
+    }
+
+    private Primitive take() {
+        return results[--resultCount];
+    }
+
+    // types are interned for good, so the slots given up are not cleared
+    private void release(int count) {
+        resultCount -= count;
+    }
+
+    private Primitive variable(int name) {
+        int binding = environment.lookup(name);
+        if (binding < 0) return TypeRules.unbound(errors);
+        return bindings[binding];
+    }
+
+    private void bind(int name, Primitive type) {
+        environment.bind(name);
+        int binding = environment.size() - 1;
+        peakEnvironment = Math.max(peakEnvironment, binding + 1);
+        if (binding == bindings.length) bindings = Arrays.copyOf(bindings, binding * 2);
+        bindings[binding] = type;
+    }
+}
@@ -0,0 +1,1068 @@
+package interpreter;
+
+import expression.*;
+import type.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infers the type of an expression in which some fun leaves the type of its argument out, Hindley-Milner style.
+ * Every type is a node of a union-find forest, kept by index in parallel arrays, and an unknown type is a
+ * variable node; unifying two types links their roots (by rank, with path compression) and records on the
+ * surviving root what it is. A let generalizes the variables created while its value was checked, which it tells
+ * by their level, so a polymorphic value can be used at a different type each time without ever searching the
+ * environment for the variables still in use.
+ * <p>
+ * The rules and their messages are those of TypeRules. Where a rule lets a value be of a subtype, as an argument
+ * or an assigned value may be, the two types are compared by subtyping part by part, and only where a variable
+ * meets a type is the variable bound to it; the branches of a conditional are unified, which asks for equal types.
+ * Reading a field of an object whose type is not known yet makes it an open object, which has at least the
+ * attributes read from it and gains each one read later, until it is unified with or passed where a closed object
+ * is wanted. A let only generalizes a fun it binds, and only if the variable is never assigned, which keeps a
+ * variable from being assigned a value at one type and then used at another.
+ */
+final class Inference {
+
+    private static final Primitive.Type VARIABLE = Primitive.Type.VARIABLE;
+
+    // the nodes, with the union-find parent and rank of each; the rest only means anything on a root: its kind,
+    // the argument and result of an arrow or the first attribute and attribute count of an object, whether an
+    // object is open, the level of a variable or open object, and the type itself once it is known to hold no
+    // variable
+    private Primitive.Type[] kinds = new Primitive.Type[64];
+    private int[] parents = new int[64];
+    private byte[] ranks = new byte[64];
+    private int[] firsts = new int[64];
+    private int[] seconds = new int[64];
+    private int[] levels = new int[64];
+    private boolean[] opens = new boolean[64];
+    private Primitive[] grounds = new Primitive[64];
+    // the walk a node was last reached by, for walks that must not reach a node twice
+    private int[] visited = new int[64];
+    private int nodeCount;
+    private int walk;
+    // the names and type nodes of the attributes of every object node
+    private String[] attributeNames = new String[16];
+    private int[] attributeTypes = new int[16];
+    private int attributeCount;
+    // the node of every type given by an annotation so far
+    private final Map<Primitive, Integer> imported = new IdentityHashMap<>();
+    private int number;
+    private int bool;
+    private int unit;
+    private int error;
+    // how many lets being generalized enclose the current node
+    private int level;
+
+    // pairs of nodes left to unify, pairs of nodes left to compare by subtyping, and nodes left to visit by the
+    // other walks
+    private int[] pairs = new int[64];
+    private int pairCount;
+    private int[] bounds = new int[64];
+    private int boundCount;
+    private int[] pending = new int[64];
+    private int pendingCount;
+    // whether the last unification failed because a variable occurs in the type it was to be bound to
+    private boolean infinite;
+
+    private ErrorLog errors;
+    private boolean allErrors;
+    // the variables of every let that some set! assigns
+    private final Map<LetExpression, boolean[]> assigned = new IdentityHashMap<>();
+
+    // the type node of each variable of every frame entered, and the level its type was generalized at, or -1
+    private int[] slotTypes = new int[16];
+    private int[] slotLevels = new int[16];
+    private int slotCount;
+    private int[] frameBases = new int[16];
+    private int frameCount;
+
+    // the nodes being checked, with the steps each has taken and where its type goes, as in TypeChecker
+    private Expression[] work = new Expression[16];
+    private int[] steps = new int[16];
+    private int[] targets = new int[16];
+    private int workSize;
+    private int[] results = new int[16];
+    private int resultCount;
+
+    /**
+     * Infers the type of e, which has been resolved, reporting its errors to the given log. Checking stops at the
+     * first error unless all errors are wanted. Top-level expressions share no bindings, so nothing is kept from one
+     * call to the next.
+     */
+    Primitive infer(Expression e, ErrorLog errors, boolean allErrors) {
+        this.errors = errors;
+        this.allErrors = allErrors;
+        reset();
+        findAssigned(e);
+
+        int target = reserve(1);
+        visitInto(e, target);
+        while (workSize > 0) {
+            int top = workSize - 1;
+            int type = resume(work[top], steps[top]++);
+            if (!allErrors && errors.size() > 0) {
+                unwind();
+                return TruePrimitive.ERROR;
+            }
+            if (type < 0) continue;
+            results[targets[top]] = type;
+            work[--workSize] = null;
+        }
+        Primitive type = toPrimitive(take(), false);
+        assigned.clear();
+        this.errors = null;
+        return type;
+    }
+
+    private void reset() {
+        Arrays.fill(grounds, 0, nodeCount, null);
+        Arrays.fill(attributeNames, 0, attributeCount, null);
+        nodeCount = 0;
+        attributeCount = 0;
+        level = 0;
+        imported.clear();
+        assigned.clear();
+        number = ground(TruePrimitive.NUMBER);
+        bool = ground(TruePrimitive.BOOLEAN);
+        unit = ground(TruePrimitive.VOID);
+        error = ground(TruePrimitive.ERROR);
+    }
+
+    private void unwind() {
+        while (workSize > 0) {
+            work[--workSize] = null;
+        }
+        resultCount = 0;
+        while (frameCount > 0) {
+            exitFrame();
+        }
+        assigned.clear();
+        this.errors = null;
+    }
+
+    /**
+     * Takes the next step of checking a node, as TypeChecker.resume does: returns its type node, or visits the
+     * children to check next and returns -1.
+     */
+    private int resume(Expression e, int step) {
+        switch (e.getType()) {
+            case NUMBER -> {
+                return number;
+            }
+            case BOOLEAN -> {
+                return bool;
+            }
+            case IDENTIFIER -> {
+                IdentifierExpression identifier = (IdentifierExpression) e;
+                if (identifier.getDepth() < 0) return report("unbound identifier");
+                return variable(identifier.getDepth(), identifier.getSlot());
+            }
+            case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                BinaryExpression binary = (BinaryExpression) e;
+                if (step == 0) {
+                    int base = reserve(2);
+                    visitInto(binary.getRight(), base + 1);
+                    visitInto(binary.getLeft(), base);
+                    return -1;
+                }
+                int left = results[resultCount - 2];
+                int right = results[resultCount - 1];
+                release(2);
+                return switch (e.getType()) {
+                    case ARITHMETIC -> {
+                        expect(left, number);
+                        expect(right, number);
+                        yield number;
+                    }
+                    case RELATIONAL -> {
+                        expect(left, number);
+                        expect(right, number);
+                        yield bool;
+                    }
+                    case LOGICAL -> {
+                        expect(left, bool);
+                        expect(right, bool);
+                        yield bool;
+                    }
+                    case APP -> app(left, right);
+                    default -> right;
+                };
+            }
+            case UNARY -> {
+                if (step == 0) return visit(((UnaryExpression) e).getOperand());
+                expect(take(), bool);
+                return bool;
+            }
+            case CONDITIONAL -> {
+                ConditionalExpression conditional = (ConditionalExpression) e;
+                if (step == 0) {
+                    int base = reserve(3);
+                    visitInto(conditional.getAlternate(), base + 2);
+                    visitInto(conditional.getConsequent(), base + 1);
+                    visitInto(conditional.getCondition(), base);
+                    return -1;
+                }
+                int condition = results[resultCount - 3];
+                int consequent = results[resultCount - 2];
+                int alternate = results[resultCount - 1];
+                release(3);
+                return conditional(condition, consequent, alternate);
+            }
+            case LET -> {
+                return resumeLet((LetExpression) e, step);
+            }
+            case LETREC -> {
+                return resumeLetrec((LetExpression) e, step);
+            }
+            case FUNCTION -> {
+                FunctionExpression function = (FunctionExpression) e;
+                if (step == 0) {
+                    enterFrame(1);
+                    int base = frameBases[frameCount - 1];
+                    slotTypes[base] = function.getArgType() == null ? variable() : ground(function.getArgType());
+                    slotLevels[base] = -1;
+                    return visit(function.getBody());
+                }
+                int argument = slotTypes[frameBases[frameCount - 1]];
+                exitFrame();
+                int body = take();
+                return isError(body) ? error : node(Primitive.Type.ARROW, argument, body);
+            }
+            case SET -> {
+                SetExpression set = (SetExpression) e;
+                if (step == 0) {
+                    if (set.getDepth() < 0) report("unbound identifier");
+                    return visit(set.getNewValue());
+                }
+                int newValue = take();
+                if (set.getDepth() < 0) return unit;
+                int variable = slotTypes[frameBases[frameCount - 1 - set.getDepth()] + set.getSlot()];
+                if (!accepts(variable, newValue)) {
+                    mismatch("assignment", variable, newValue);
+                }
+                return unit;
+            }
+            case OBJECT -> {
+                List<Value> values = ((ObjectExpression) e).getAttributes();
+                int count = values.size();
+                if (step == 0) {
+                    int base = reserve(count);
+                    for (int i = count - 1; i >= 0; i--) {
+                        visitInto(values.get(i).value(), base + i);
+                    }
+                    return -1;
+                }
+                int first = attributeCount;
+                for (int i = 0; i < count; i++) {
+                    int type = results[resultCount - count + i];
+                    if (isError(type)) {
+                        attributeCount = first;
+                        release(count);
+                        return error;
+                    }
+                    attribute(values.get(i).id(), type);
+                }
+                release(count);
+                return node(Primitive.Type.OBJECT, first, count);
+            }
+            case FIELD -> {
+                FieldExpression field = (FieldExpression) e;
+                if (step == 0) return visit(field.getObject());
+                return field(take(), field.getAttribute());
+            }
+        }
+        throw new IllegalStateException(e.getType().toString());
+    }
+
+    private int resumeLet(LetExpression e, int step) {
+        // as in TypeChecker, except that a value that is generalized is checked one level deeper
+        List<Value> variables = e.getVariables();
+        int count = variables.size();
+        if (step > count) {
+            exitFrame();
+            return take();
+        }
+
+        if (step == 0) {
+            enterFrame(count);
+        } else {
+            int slot = frameBases[frameCount - 1] + step - 1;
+            slotTypes[slot] = take();
+            slotLevels[slot] = -1;
+            if (isGeneralized(e, step - 1)) slotLevels[slot] = --level;
+        }
+
+        if (step == count) return visit(e.getBody());
+        if (e.isRedefinition(step)) report("variable " + variables.get(step).id() + " has already been defined");
+        if (isGeneralized(e, step)) level++;
+        return visit(variables.get(step).value());
+    }
+
+    private int resumeLetrec(LetExpression e, int step) {
+        // as in TypeChecker, with a fresh variable for each variable left unannotated; the values are checked
+        // one level deeper when they are generalized, which is all together or not at all
+        List<Value> variables = e.getVariables();
+        int count = variables.size();
+        if (step > count) {
+            exitFrame();
+            return take();
+        }
+
+        int base;
+        if (step == 0) {
+            enterFrame(count);
+            base = frameBases[frameCount - 1];
+            if (isGeneralized(e)) level++;
+            for (int i = 0; i < count; i++) {
+                Primitive annotation = e.getAnnotations().get(i);
+                slotTypes[base + i] = annotation == null ? variable() : ground(annotation);
+                slotLevels[base + i] = -1;
+            }
+            for (int i = 0; i < count; i++) {
+                if (e.isRedefinition(i)) report("variable " + variables.get(i).id() + " has already been defined");
+            }
+        } else {
+            base = frameBases[frameCount - 1];
+            int variable = slotTypes[base + step - 1];
+            int value = take();
+            if (!accepts(variable, value)) {
+                mismatch("recursive binding", variable, value);
+            }
+        }
+
+        if (step < count) return visit(variables.get(step).value());
+        if (isGeneralized(e)) {
+            level--;
+            Arrays.fill(slotLevels, base, base + count, level);
+        }
+        return visit(e.getBody());
+    }
+
+    // the values of a letrec are all funs, so only assignments keep them from being generalized
+    private boolean isGeneralized(LetExpression e) {
+        boolean[] set = assigned.get(e);
+        if (set == null) return true;
+        for (boolean assignment : set) {
+            if (assignment) return false;
+        }
+        return true;
+    }
+
+    private boolean isGeneralized(LetExpression e, int position) {
+        if (e.getVariables().get(position).value().getType() != Expression.Type.FUNCTION) return false;
+        boolean[] set = assigned.get(e);
+        return set == null || !set[position];
+    }
+
+    /**
+     * Finds the variables of every let in e that some set! in e assigns.
+     */
+    private void findAssigned(Expression e) {
+        // the frame each let, letrec or fun opens, innermost last, with null for a fun; an entry of the work list is an
+        // expression to visit or, where null, the end of the innermost frame
+        List<LetExpression> frames = new ArrayList<>();
+        List<Expression> left = new ArrayList<>();
+        left.add(e);
+        while (!left.isEmpty()) {
+            Expression node = left.remove(left.size() - 1);
+            if (node == null) {
+                frames.remove(frames.size() - 1);
+                continue;
+            }
+            switch (node.getType()) {
+                case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                    left.add(((BinaryExpression) node).getRight());
+                    left.add(((BinaryExpression) node).getLeft());
+                }
+                case UNARY -> left.add(((UnaryExpression) node).getOperand());
+                case CONDITIONAL -> {
+                    ConditionalExpression conditional = (ConditionalExpression) node;
+                    left.add(conditional.getAlternate());
+                    left.add(conditional.getConsequent());
+                    left.add(conditional.getCondition());
+                }
+                case LET, LETREC -> {
+                    LetExpression let = (LetExpression) node;
+                    frames.add(let);
+                    left.add(null);
+                    left.add(let.getBody());
+                    for (Value variable : let.getVariables()) {
+                        left.add(variable.value());
+                    }
+                }
+                case FUNCTION -> {
+                    frames.add(null);
+                    left.add(null);
+                    left.add(((FunctionExpression) node).getBody());
+                }
+                case SET -> {
+                    SetExpression set = (SetExpression) node;
+                    LetExpression let = set.getDepth() < 0 ? null : frames.get(frames.size() - 1 - set.getDepth());
+                    if (let != null) {
+                        assigned.computeIfAbsent(let, l -> new boolean[l.getVariables().size()])[set.getSlot()] = true;
+                    }
+                    left.add(set.getNewValue());
+                }
+                case OBJECT -> {
+                    for (Value attribute : ((ObjectExpression) node).getAttributes()) {
+                        left.add(attribute.value());
+                    }
+                }
+                case FIELD -> left.add(((FieldExpression) node).getObject());
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the type of an attribute of an object. An object whose type is not known yet is made an open object
+     * with just that attribute, and an open object lacking the attribute gains it.
+     */
+    private int field(int type, String name) {
+        int object = find(type);
+        if (kinds[object] == VARIABLE) {
+            int first = attributeCount;
+            attribute(name, variable());
+            int open = node(Primitive.Type.OBJECT, first, 1);
+            opens[open] = true;
+            bind(object, open);
+            return attributeTypes[first];
+        }
+        if (kinds[object] != Primitive.Type.OBJECT) {
+            if (isError(object)) return error;
+            return report("expected type OBJECT but got " + kinds[object]);
+        }
+        int index = indexOf(firsts[object], seconds[object], name);
+        if (index >= 0) return attributeTypes[index];
+        if (!opens[object]) return report("unknown attribute");
+        return extend(object, name);
+    }
+
+    /**
+     * Adds an attribute to an open object, and returns the fresh variable that is its type.
+     */
+    private int extend(int object, String name) {
+        // the attributes of one object are contiguous, so the open object moves to a copy with the new one at the end
+        int first = attributeCount;
+        for (int i = firsts[object]; i < firsts[object] + seconds[object]; i++) {
+            attribute(attributeNames[i], attributeTypes[i]);
+        }
+        int added = variable();
+        levels[added] = Math.min(level, levels[object]);
+        attribute(name, added);
+        firsts[object] = first;
+        seconds[object]++;
+        return added;
+    }
+
+    private void expect(int type, int expected) {
+        int root = find(type);
+        if (kinds[root] == kinds[expected] || isError(root)) return;
+        if (kinds[root] == VARIABLE) unify(root, expected);
+        else report("expected type " + kinds[expected] + " but got " + kinds[root]);
+    }
+
+    private int conditional(int condition, int consequent, int alternate) {
+        int root = find(condition);
+        if (kinds[root] == VARIABLE) unify(root, bool);
+        else if (kinds[root] != Primitive.Type.BOOLEAN && !isError(root)) report("first expression in a conditional statement must be a boolean");
+
+        infinite = false;
+        if (isError(consequent)) return alternate;
+        if (isError(alternate)) return consequent;
+        Primitive known = toPrimitive(consequent, true);
+        Primitive other = known == null ? null : toPrimitive(alternate, true);
+        if (other != null) {
+            if (Subtyping.isSubtype(other, known)) return consequent;
+            if (Subtyping.isSubtype(known, other)) return alternate;
+        } else if (unify(consequent, alternate)) {
+            return consequent;
+        }
+        return mismatch("conditional branches", consequent, alternate);
+    }
+
+    private int app(int function, int argument) {
+        int root = find(function);
+        if (kinds[root] == VARIABLE) {
+            unify(root, node(Primitive.Type.ARROW, variable(), variable()));
+            root = find(root);
+        }
+        if (kinds[root] != Primitive.Type.ARROW) {
+            if (isError(root)) return error;
+            return report("first expression in an application must be a function");
+        }
+
+        int expected = firsts[root];
+        if (!accepts(expected, argument)) {
+            mismatch("function argument and call", expected, argument);
+        }
+        return seconds[root];
+    }
+
+    /**
+     * Returns whether a value of the given type may be used where the expected one is, comparing them by subtyping.
+     * Either being the error type is no mistake.
+     */
+    private boolean accepts(int expected, int given) {
+        infinite = false;
+        if (isError(expected) || isError(given)) return true;
+        Primitive known = toPrimitive(expected, true);
+        Primitive other = known == null ? null : toPrimitive(given, true);
+        if (other != null) return Subtyping.isSubtype(other, known);
+        return subtype(given, expected);
+    }
+
+    /**
+     * Returns whether the first type is a subtype of the second, as Subtyping has it, for types that may hold
+     * variables. The types are compared part by part, and where a variable meets the other type the two are
+     * unified, which binds the variable. An open object passed where a closed one is wanted gains the attributes it
+     * lacks, and one wanted where a closed one is passed is closed, since the closed one may have attributes it
+     * lacks; two open objects are unified.
+     */
+    private boolean subtype(int sub, int sup) {
+        boundCount = 0;
+        pushBound(sub, sup);
+        while (boundCount > 0) {
+            int y = find(bounds[--boundCount]);
+            int x = find(bounds[--boundCount]);
+            if (x == y || isError(x) || isError(y)) continue;
+            if (grounds[x] != null && grounds[y] != null) {
+                if (Subtyping.isSubtype(grounds[x], grounds[y])) continue;
+                return false;
+            }
+            if (kinds[x] == VARIABLE || kinds[y] == VARIABLE || opens[x] && opens[y]) {
+                if (unify(x, y)) continue;
+                return false;
+            }
+            if (kinds[x] != kinds[y]) return false;
+
+            if (kinds[x] == Primitive.Type.ARROW) {
+                pushBound(firsts[y], firsts[x]);
+                pushBound(seconds[x], seconds[y]);
+                continue;
+            }
+            for (int i = firsts[y]; i < firsts[y] + seconds[y]; i++) {
+                int match = indexOf(firsts[x], seconds[x], attributeNames[i]);
+                if (match >= 0) pushBound(attributeTypes[match], attributeTypes[i]);
+                else if (opens[x]) pushBound(extend(x, attributeNames[i]), attributeTypes[i]);
+                else return false;
+            }
+            opens[y] = false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes the two types equal by binding their variables, and returns whether they could be made so. A failed
+     * unification may have bound some variables already, but only after an error that is reported.
+     */
+    private boolean unify(int a, int b) {
+        infinite = false;
+        pairCount = 0;
+        pushPair(a, b);
+        while (pairCount > 0) {
+            int y = find(pairs[--pairCount]);
+            int x = find(pairs[--pairCount]);
+            if (x == y || isError(x) || isError(y)) continue;
+            if (kinds[x] == VARIABLE || kinds[y] == VARIABLE) {
+                if (kinds[x] == VARIABLE ? bind(x, y) : bind(y, x)) continue;
+                infinite = true;
+                return false;
+            }
+            if (kinds[x] != kinds[y]) return false;
+            if (opens[x] || opens[y]) {
+                if (opens[x] ? join(x, y) : join(y, x)) continue;
+                return false;
+            }
+            if (grounds[x] != null && grounds[y] != null) {
+                if (!Subtyping.isEquivalent(grounds[x], grounds[y])) return false;
+                link(x, y);
+                continue;
+            }
+
+            int firstX = firsts[x];
+            int firstY = firsts[y];
+            int secondX = seconds[x];
+            int secondY = seconds[y];
+            // objects are equal with the same attributes in any order, as Subtyping has it
+            int[] matches = null;
+            if (kinds[x] == Primitive.Type.OBJECT) {
+                if (secondX != secondY) return false;
+                matches = new int[secondY];
+                for (int i = 0; i < secondY; i++) {
+                    matches[i] = indexOf(firstX, secondX, attributeNames[firstY + i]);
+                    if (matches[i] < 0) return false;
+                }
+            }
+            // linked before the parts are, so a pair met again on the way is already equal; a type known in full
+            // stays so, since only those may be cyclic, and otherwise the first type keeps its attribute order
+            if (grounds[y] != null) link(x, y);
+            else link(y, x);
+            if (kinds[y] == Primitive.Type.ARROW) {
+                pushPair(firstX, firstY);
+                pushPair(secondX, secondY);
+            } else if (matches != null) {
+                for (int i = 0; i < secondY; i++) {
+                    pushPair(attributeTypes[matches[i]], attributeTypes[firstY + i]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unifies an open object with another object, as unify does a variable: with a closed object it must have every
+     * attribute the open one has, and two open objects join into one with the attributes of both. The attributes
+     * the two share are left to unify. Returns false if an attribute is missing or, with infinite set, if the other
+     * object contains the open one.
+     */
+    private boolean join(int open, int other) {
+        if (!opens[other]) {
+            for (int i = firsts[open]; i < firsts[open] + seconds[open]; i++) {
+                int match = indexOf(firsts[other], seconds[other], attributeNames[i]);
+                if (match < 0) return false;
+                pushPair(attributeTypes[i], attributeTypes[match]);
+            }
+            infinite = !bind(open, other);
+            return !infinite;
+        }
+
+        int first = attributeCount;
+        for (int i = firsts[open]; i < firsts[open] + seconds[open]; i++) {
+            attribute(attributeNames[i], attributeTypes[i]);
+        }
+        for (int i = firsts[other]; i < firsts[other] + seconds[other]; i++) {
+            int match = indexOf(firsts[open], seconds[open], attributeNames[i]);
+            if (match < 0) attribute(attributeNames[i], attributeTypes[i]);
+            else pushPair(attributeTypes[match], attributeTypes[i]);
+        }
+        int joined = node(Primitive.Type.OBJECT, first, attributeCount - first);
+        opens[joined] = true;
+        levels[joined] = Math.min(levels[open], levels[other]);
+        infinite = !bind(open, joined) || !bind(other, find(joined));
+        return !infinite;
+    }
+
+    /**
+     * Returns the position of the attribute with the given name among the count attributes from first, or -1.
+     */
+    private int indexOf(int first, int count, String name) {
+        for (int i = first; i < first + count; i++) {
+            if (attributeNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Binds a variable or open object to a type, unless the type contains it, in which case it would have to be
+     * infinite. Every variable and open object of the type is brought down to the level of the one bound, since it
+     * is now as much in use as that one is.
+     */
+    private boolean bind(int variable, int type) {
+        if (kinds[type] == VARIABLE) {
+            levels[type] = Math.min(levels[type], levels[variable]);
+            link(variable, type);
+            return true;
+        }
+
+        walk++;
+        pendingCount = 0;
+        push(type);
+        while (pendingCount > 0) {
+            int node = find(pending[--pendingCount]);
+            if (node == variable) return false;
+            if (visited[node] == walk || grounds[node] != null) continue;
+            visited[node] = walk;
+            pushParts(node);
+            if (kinds[node] == VARIABLE || opens[node]) levels[node] = Math.min(levels[node], levels[variable]);
+        }
+        link(variable, type);
+        return true;
+    }
+
+    /**
+     * Joins two roots, the second of which says what the joined type is.
+     */
+    private void link(int from, int to) {
+        if (ranks[from] > ranks[to]) {
+            kinds[from] = kinds[to];
+            firsts[from] = firsts[to];
+            seconds[from] = seconds[to];
+            levels[from] = levels[to];
+            opens[from] = opens[to];
+            grounds[from] = grounds[to];
+            parents[to] = from;
+            return;
+        }
+        if (ranks[from] == ranks[to]) ranks[to]++;
+        parents[from] = to;
+    }
+
+    // the atomic types have a node each, but any node may end up the root of one, so they are told apart by kind
+    private boolean isError(int type) {
+        return kinds[find(type)] == Primitive.Type.ERROR;
+    }
+
+    private int find(int node) {
+        int root = node;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[node] != root) {
+            int next = parents[node];
+            parents[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    /**
+     * Returns a copy of the type of a let variable generalized at the given level, with a fresh variable for each
+     * of its variables deeper than that and the rest shared.
+     */
+    private int instantiate(int type, int generalized) {
+        Map<Integer, Integer> copies = new HashMap<>();
+        pendingCount = 0;
+        push(find(type));
+        while (pendingCount > 0) {
+            int node = pending[pendingCount - 1];
+            if (copies.containsKey(node)) {
+                pendingCount--;
+                continue;
+            }
+            if (grounds[node] != null) {
+                copies.put(node, node);
+                pendingCount--;
+                continue;
+            }
+            if (kinds[node] == VARIABLE) {
+                copies.put(node, levels[node] > generalized ? variable() : node);
+                pendingCount--;
+                continue;
+            }
+
+            int mark = pendingCount;
+            pushParts(node);
+            boolean ready = true;
+            for (int i = mark; i < pendingCount; i++) {
+                pending[i] = find(pending[i]);
+                ready &= copies.containsKey(pending[i]);
+            }
+            if (!ready) continue;
+            pendingCount = mark - 1;
+
+            if (kinds[node] == Primitive.Type.ARROW) {
+                int argument = copies.get(find(firsts[node]));
+                int result = copies.get(find(seconds[node]));
+                boolean same = argument == find(firsts[node]) && result == find(seconds[node]);
+                copies.put(node, same ? node : node(Primitive.Type.ARROW, argument, result));
+            } else {
+                int first = firsts[node];
+                int count = seconds[node];
+                boolean same = true;
+                for (int i = first; i < first + count; i++) {
+                    same &= copies.get(find(attributeTypes[i])) == find(attributeTypes[i]);
+                }
+                // an open object generalized is like a variable, and each copy gains attributes of its own
+                if (same && !(opens[node] && levels[node] > generalized)) {
+                    copies.put(node, node);
+                    continue;
+                }
+                int copy = attributeCount;
+                for (int i = first; i < first + count; i++) {
+                    attribute(attributeNames[i], copies.get(find(attributeTypes[i])));
+                }
+                int made = node(Primitive.Type.OBJECT, copy, count);
+                opens[made] = opens[node];
+                copies.put(node, made);
+            }
+        }
+        return copies.get(find(type));
+    }
+
+    /**
+     * Returns the type a node stands for, or null if it still holds a variable or open object and only a type known
+     * in full is wanted. Otherwise its variables are numbered in the order they are first printed, and an open
+     * object stands for the object with just the attributes read from it, which is what any object passed for it
+     * is a subtype of.
+     */
+    private Primitive toPrimitive(int type, boolean known) {
+        int root = find(type);
+        if (grounds[root] != null) return grounds[root];
+
+        // the variables in order, found before the type is built since its parts are built first
+        Map<Integer, Primitive> built = new HashMap<>();
+        walk++;
+        pendingCount = 0;
+        push(root);
+        while (pendingCount > 0) {
+            int node = find(pending[--pendingCount]);
+            if (visited[node] == walk || grounds[node] != null) continue;
+            visited[node] = walk;
+            if (known && opens[node]) return null;
+            if (kinds[node] == VARIABLE) {
+                if (known) return null;
+                built.put(node, TypeVariable.of(built.size()));
+            }
+            int mark = pendingCount;
+            pushParts(node);
+            // pushed in order, so reversed to be popped in order
+            for (int i = mark, j = pendingCount - 1; i < j; i++, j--) {
+                int swap = pending[i];
+                pending[i] = pending[j];
+                pending[j] = swap;
+            }
+        }
+
+        pendingCount = 0;
+        push(root);
+        while (pendingCount > 0) {
+            int node = pending[pendingCount - 1];
+            if (grounds[node] != null || built.containsKey(node)) {
+                pendingCount--;
+                continue;
+            }
+            int mark = pendingCount;
+            pushParts(node);
+            boolean ready = true;
+            boolean open = opens[node];
+            for (int i = mark; i < pendingCount; i++) {
+                pending[i] = find(pending[i]);
+                ready &= grounds[pending[i]] != null || built.containsKey(pending[i]);
+                open |= grounds[pending[i]] == null;
+            }
+            if (!ready) continue;
+            pendingCount = mark - 1;
+
+            Primitive made;
+            if (kinds[node] == Primitive.Type.ARROW) {
+                made = ArrowType.of(part(firsts[node], built), part(seconds[node], built));
+            } else {
+                List<Attribute> attributes = new ArrayList<>(seconds[node]);
+                for (int i = firsts[node]; i < firsts[node] + seconds[node]; i++) {
+                    attributes.add(new Attribute(attributeNames[i], part(attributeTypes[i], built)));
+                }
+                made = ObjectType.of(attributes);
+            }
+            // a type without variables is the same whatever else it is part of
+            if (open) built.put(node, made);
+            else grounds[node] = made;
+        }
+        return part(root, built);
+    }
+
+    private Primitive part(int node, Map<Integer, Primitive> built) {
+        int root = find(node);
+        return grounds[root] != null ? grounds[root] : built.get(root);
+    }
+
+    /**
+     * Returns the node of a type known in full, such as an annotation, making nodes for it and its parts the first
+     * time it is asked for. A recursive type shares the node of its unfolding, so its node is part of itself; every
+     * node is made before its parts are filled in, which is what lets the walk close such a cycle.
+     */
+    private int ground(Primitive type) {
+        Integer known = imported.get(type);
+        if (known != null) return known;
+
+        List<Primitive> unfilled = new ArrayList<>();
+        int node = groundNode(type, unfilled);
+        while (!unfilled.isEmpty()) {
+            Primitive next = unfilled.remove(unfilled.size() - 1);
+            int filled = imported.get(next);
+            if (next instanceof ArrowType arrow) {
+                // made before they are stored, since making a node may replace the arrays
+                int argument = groundNode(arrow.getArgument(), unfilled);
+                int result = groundNode(arrow.getResult(), unfilled);
+                firsts[filled] = argument;
+                seconds[filled] = result;
+            } else if (next instanceof ObjectType object) {
+                // the attributes of one object are contiguous, and making a node adds none
+                int first = attributeCount;
+                for (Attribute attribute : object.getAttributes()) {
+                    attribute(attribute.identifier(), -1);
+                }
+                for (int i = 0; i < object.getAttributes().size(); i++) {
+                    attributeTypes[first + i] = groundNode(object.getAttributes().get(i).type(), unfilled);
+                }
+                firsts[filled] = first;
+                seconds[filled] = object.getAttributes().size();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the node of a type known in full, making it without its parts if there is none yet, in which case the
+     * unfolded type is left to have its parts filled in.
+     */
+    private int groundNode(Primitive type, List<Primitive> unfilled) {
+        Integer known = imported.get(type);
+        if (known != null) return known;
+        Primitive shape = type.unfold();
+        known = imported.get(shape);
+        if (known != null) {
+            imported.put(type, known);
+            return known;
+        }
+
+        int node = node(shape.getType(), -1, -1);
+        grounds[node] = type;
+        imported.put(type, node);
+        imported.put(shape, node);
+        unfilled.add(shape);
+        return node;
+    }
+
+    private int variable() {
+        return node(VARIABLE, -1, -1);
+    }
+
+    private int node(Primitive.Type kind, int first, int second) {
+        if (nodeCount == kinds.length) {
+            int length = nodeCount * 2;
+            kinds = Arrays.copyOf(kinds, length);
+            parents = Arrays.copyOf(parents, length);
+            ranks = Arrays.copyOf(ranks, length);
+            firsts = Arrays.copyOf(firsts, length);
+            seconds = Arrays.copyOf(seconds, length);
+            levels = Arrays.copyOf(levels, length);
+            opens = Arrays.copyOf(opens, length);
+            grounds = Arrays.copyOf(grounds, length);
+            visited = Arrays.copyOf(visited, length);
+        }
+        kinds[nodeCount] = kind;
+        parents[nodeCount] = nodeCount;
+        ranks[nodeCount] = 0;
+        firsts[nodeCount] = first;
+        seconds[nodeCount] = second;
+        levels[nodeCount] = level;
+        opens[nodeCount] = false;
+        visited[nodeCount] = 0;
+        return nodeCount++;
+    }
+
+    private void attribute(String name, int type) {
+        if (attributeCount == attributeNames.length) {
+            attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+            attributeTypes = Arrays.copyOf(attributeTypes, attributeCount * 2);
+        }
+        attributeNames[attributeCount] = name;
+        attributeTypes[attributeCount++] = type;
+    }
+
+    private void pushParts(int node) {
+        if (kinds[node] == Primitive.Type.ARROW) {
+            push(firsts[node]);
+            push(seconds[node]);
+        } else if (kinds[node] == Primitive.Type.OBJECT) {
+            for (int i = firsts[node]; i < firsts[node] + seconds[node]; i++) {
+                push(attributeTypes[i]);
+            }
+        }
+    }
+
+    private void pushBound(int sub, int sup) {
+        if (boundCount + 2 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        bounds[boundCount++] = sub;
+        bounds[boundCount++] = sup;
+    }
+
+    private void push(int node) {
+        if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = node;
+    }
+
+    private void pushPair(int a, int b) {
+        if (pairCount + 2 > pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        pairs[pairCount++] = a;
+        pairs[pairCount++] = b;
+    }
+
+    /**
+     * Reports that a rule found two types that do not match, in the words of TypeRules. Unification only fails
+     * with a variable left at the top when the variable occurs in the other type, and that gets a message of its
+     * own, since there is no kind to name.
+     */
+    private int mismatch(String rule, int expected, int given) {
+        if (infinite) return report("type mismatch in " + rule + ": a type would have to contain itself");
+        return report("type mismatch in " + rule + ": " + kinds[find(expected)] + ", " + kinds[find(given)]);
+    }
+
+    private int report(String message) {
+        errors.report(message);
+        return error;
+    }
+
+    private int visit(Expression e) {
+        visitInto(e, reserve(1));
+        return -1;
+    }
+
+    private void visitInto(Expression e, int target) {
+        switch (e.getType()) {
+            case NUMBER -> {
+                results[target] = number;
+                return;
+            }
+            case BOOLEAN -> {
+                results[target] = bool;
+                return;
+            }
+        }
+        if (workSize == work.length) {
+            work = Arrays.copyOf(work, workSize * 2);
+            steps = Arrays.copyOf(steps, workSize * 2);
+            targets = Arrays.copyOf(targets, workSize * 2);
+        }
+        work[workSize] = e;
+        steps[workSize] = 0;
+        targets[workSize++] = target;
+    }
+
+    private int reserve(int count) {
+        if (resultCount + count > results.length) {
+            results = Arrays.copyOf(results, Math.max(results.length * 2, resultCount + count));
+        }
+        resultCount += count;
+        return resultCount - count;
+    }
+
+    private int take() {
+        return results[--resultCount];
+    }
+
+    private void release(int count) {
+        resultCount -= count;
+    }
+
+    /**
+     * Returns the type of a variable, a fresh copy of it if it was generalized.
+     */
+    private int variable(int depth, int slot) {
+        int index = frameBases[frameCount - 1 - depth] + slot;
+        return slotLevels[index] < 0 ? slotTypes[index] : instantiate(slotTypes[index], slotLevels[index]);
+    }
+
+    private void enterFrame(int size) {
+        if (frameCount == frameBases.length) frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+        if (slotCount + size > slotTypes.length) {
+            int length = Math.max(slotTypes.length * 2, slotCount + size);
+            slotTypes = Arrays.copyOf(slotTypes, length);
+            slotLevels = Arrays.copyOf(slotLevels, length);
+        }
+        frameBases[frameCount++] = slotCount;
+        slotCount += size;
+    }
+
+    private void exitFrame() {
+        slotCount = frameBases[--frameCount];
+    }
+}
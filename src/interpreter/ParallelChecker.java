@@ -0,0 +1,76 @@
+package interpreter;
+
+import expression.Expression;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks top-level expressions concurrently on the common fork/join pool. Every binding is scoped to the body of
+ * the let or fun that makes it, so a top-level expression can only refer to names it binds itself (anything else
+ * resolves as unbound within the expression), and no two top-level expressions depend on each other. The list is
+ * split into ranges that are each checked by their own TypeChecker, and the results are combined in source order,
+ * so the outcome is exactly that of TypeChecker.run: the first error, or else the type of the last expression.
+ */
+public class ParallelChecker {
+
+    private static final int THRESHOLD = 8;
+
+    public static String run(List<Expression> expressions) {
+        return run(expressions, null);
+    }
+
+    /**
+     * Checks the expressions like run, raising the given peak to the largest number of bindings any one checker
+     * had live at once unless it is null.
+     */
+    public static String run(List<Expression> expressions, AtomicInteger peakEnvironment) {
+        return new CheckTask(expressions, 0, expressions.size(), peakEnvironment).invoke().output();
+    }
+
+    private record Result(String output, boolean error) {
+    }
+
+    // a task is never serialized, though ForkJoinTask is Serializable
+    @SuppressWarnings("serial")
+    private static class CheckTask extends RecursiveTask<Result> {
+
+        private final transient List<Expression> expressions;
+        private final int from;
+        private final int to;
+        private final AtomicInteger peakEnvironment;
+
+        CheckTask(List<Expression> expressions, int from, int to, AtomicInteger peakEnvironment) {
+            this.expressions = expressions;
+            this.from = from;
+            this.to = to;
+            this.peakEnvironment = peakEnvironment;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= THRESHOLD) {
+                TypeChecker checker = new TypeChecker();
+                Result result = new Result("", false);
+                for (int i = from; i < to; i++) {
+                    try {
+                        result = new Result(checker.check(expressions.get(i)), false);
+                    } catch (TypeCheckException ex) {
+                        result = new Result(TypeChecker.makeNewError(ex.getMessage()), true);
+                        break;
+                    }
+                }
+                if (peakEnvironment != null) peakEnvironment.accumulateAndGet(checker.getPeakEnvironment(), Math::max);
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            CheckTask left = new CheckTask(expressions, from, middle, peakEnvironment);
+            left.fork();
+            Result right = new CheckTask(expressions, middle, to, peakEnvironment).compute();
+            Result first = left.join();
+            return first.error() ? first : right;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package interpreter;
+
+import expression.*;
+import type.Primitive;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves every variable reference to the frame and slot of its binding, de Bruijn style, before an expression
+ * is checked. Each let, letrec and fun introduces one frame; the depth of a reference counts the frames between it and
+ * its binder, and the slot is the position of the binding within that frame. Names are interned once here, so the
+ * checker never hashes a name. References to unbound names are left with depth -1 for the checker to report.
+ * <p>
+ * On the way back up, every node also gets its size, whether it is closed, and a 128-bit hash of its structure.
+ * The hash uses the resolved depth and slot of references instead of names, so subterms that only differ in the
+ * names of their own variables hash alike, the same way they check alike.
+ */
+public class Resolver {
+
+    // how far out the references of a subtree with an unbound reference reach
+    private static final int UNBOUND = Integer.MAX_VALUE;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final Environment environment = new Environment();
+    private int peakEnvironment;
+
+    // the nodes being resolved, innermost last, with the number of steps each has taken, whether it is inside a
+    // frame its parent opens, and its shape so far (made once per frame, and reset for every node that takes it)
+    private Expression[] work = new Expression[0];
+    private int[] steps = new int[0];
+    private boolean[] bound = new boolean[0];
+    private Shape[] shapes = new Shape[0];
+    // for a let, the symbol of the variable whose value is being resolved
+    private int[] pending = new int[0];
+    private int workSize;
+
+    /**
+     * Resolves e without recursing, as the checker checks it: each node being resolved has a frame on the work
+     * stack, and finishing a node folds its shape into that of its parent.
+     */
+    public void resolve(Expression e) {
+        push(e, false);
+        while (workSize > 0) {
+            int top = workSize - 1;
+            if (resume(work[top], steps[top]++, shapes[top], top)) complete(top);
+        }
+    }
+
+    /**
+     * Forgets the names interned so far. No top-level expression can refer to the bindings of another, so a
+     * resolver fed one expression after another only needs the names of the one it is resolving.
+     */
+    public void forgetNames() {
+        symbols.clear();
+    }
+
+    /**
+     * Returns the largest number of bindings that were live at once.
+     */
+    public int getPeakEnvironment() {
+        return peakEnvironment;
+    }
+
+    /**
+     * Takes the next step of resolving a node, given how many steps it has taken already: returns whether it is
+     * done, or pushes the next child to resolve and returns false.
+     */
+    private boolean resume(Expression e, int step, Shape shape, int frame) {
+        switch (e.getType()) {
+            case NUMBER, BOOLEAN -> {
+                return true;
+            }
+            case IDENTIFIER -> {
+                IdentifierExpression identifier = (IdentifierExpression) e;
+                int symbol = symbols.intern(identifier.getValue());
+                identifier.resolve(symbol, environment.lookupDepth(symbol), environment.lookupSlot(symbol));
+                shape.reference(identifier.getDepth(), identifier.getSlot());
+                return true;
+            }
+            case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                BinaryExpression binary = (BinaryExpression) e;
+                if (step == 2) return true;
+                return push(step == 0 ? binary.getLeft() : binary.getRight(), false);
+            }
+            case UNARY -> {
+                return step == 1 || push(((UnaryExpression) e).getOperand(), false);
+            }
+            case CONDITIONAL -> {
+                ConditionalExpression conditional = (ConditionalExpression) e;
+                return switch (step) {
+                    case 0 -> push(conditional.getCondition(), false);
+                    case 1 -> push(conditional.getConsequent(), false);
+                    case 2 -> push(conditional.getAlternate(), false);
+                    default -> true;
+                };
+            }
+            case LET -> {
+                return resumeLet((LetExpression) e, step, shape, frame);
+            }
+            case LETREC -> {
+                return resumeLetrec((LetExpression) e, step, shape);
+            }
+            case FUNCTION -> {
+                FunctionExpression function = (FunctionExpression) e;
+                if (step == 1) {
+                    environment.exitScope();
+                    return true;
+                }
+                environment.enterScope();
+                environment.bind(symbols.intern(function.getArgName()));
+                peakEnvironment = Math.max(peakEnvironment, environment.size());
+                // serials start at 1, so 0 stands for an argument type left to be inferred
+                shape.add(function.getArgType() == null ? 0 : function.getArgType().getSerial());
+                shape.inferred |= function.getArgType() == null;
+                return push(function.getBody(), true);
+            }
+            case SET -> {
+                SetExpression set = (SetExpression) e;
+                if (step == 1) return true;
+                int symbol = symbols.intern(set.getIdentifier());
+                set.resolve(environment.lookupDepth(symbol), environment.lookupSlot(symbol));
+                shape.reference(set.getDepth(), set.getSlot());
+                return push(set.getNewValue(), false);
+            }
+            case OBJECT -> {
+                List<Value> attributes = ((ObjectExpression) e).getAttributes();
+                if (step == attributes.size()) return true;
+                shape.add(attributes.get(step).id());
+                return push(attributes.get(step).value(), false);
+            }
+            case FIELD -> {
+                FieldExpression field = (FieldExpression) e;
+                if (step == 1) return true;
+                shape.add(field.getAttribute());
+                return push(field.getObject(), false);
+            }
+        }
+        throw new IllegalStateException(e.getType().toString());
+    }
+
+    private boolean resumeLet(LetExpression e, int step, Shape shape, int frame) {
+        // each variable is visible to the ones after it, so each is bound right after its value is resolved
+        List<Value> variables = e.getVariables();
+        if (step == variables.size() + 1) {
+            environment.exitScope();
+
+            // the names only matter to the checker where one is repeated, and then only for the error message
+            shape.add(variables.size());
+            for (int i = 0; i < variables.size(); i++) {
+                if (!e.isRedefinition(i)) continue;
+                shape.add(i);
+                shape.add(variables.get(i).id());
+            }
+            shape.add(-1);
+            return true;
+        }
+
+        if (step == 0) {
+            environment.enterScope();
+            e.clearRedefinitions();
+        } else {
+            environment.bind(pending[frame]);
+            peakEnvironment = Math.max(peakEnvironment, environment.size());
+        }
+        if (step == variables.size()) return push(e.getBody(), true);
+
+        int symbol = symbols.intern(variables.get(step).id());
+        if (environment.isBoundInScope(symbol)) e.addRedefinition(step);
+        pending[frame] = symbol;
+        return push(variables.get(step).value(), true);
+    }
+
+    private boolean resumeLetrec(LetExpression e, int step, Shape shape) {
+        // every variable is visible to every value, so all are bound before any value is resolved
+        List<Value> variables = e.getVariables();
+        if (step == 0) {
+            environment.enterScope();
+            e.clearRedefinitions();
+            for (int i = 0; i < variables.size(); i++) {
+                int symbol = symbols.intern(variables.get(i).id());
+                if (environment.isBoundInScope(symbol)) e.addRedefinition(i);
+                environment.bind(symbol);
+            }
+            peakEnvironment = Math.max(peakEnvironment, environment.size());
+        }
+        if (step < variables.size()) return push(variables.get(step).value(), true);
+        if (step == variables.size()) return push(e.getBody(), true);
+        environment.exitScope();
+
+        shape.add(variables.size());
+        for (int i = 0; i < variables.size(); i++) {
+            Primitive annotation = e.getAnnotations().get(i);
+            shape.add(annotation == null ? 0 : annotation.getSerial());
+            shape.inferred |= annotation == null;
+            if (!e.isRedefinition(i)) continue;
+            shape.add(i);
+            shape.add(variables.get(i).id());
+        }
+        shape.add(-1);
+        return true;
+    }
+
+    /**
+     * Records the shape of the finished node on the given frame, pops it and folds it into its parent.
+     */
+    private void complete(int frame) {
+        Expression e = work[frame];
+        Shape shape = shapes[frame];
+        e.setShape(shape.size, shape.reach == 0, shape.inferred, finish(shape.high), finish(shape.low));
+        work[frame] = null;
+        workSize--;
+        if (frame > 0) shapes[frame - 1].child(e, shape.reach, bound[frame]);
+    }
+
+    /**
+     * Pushes a frame for resolving e, which is inside a frame its parent opens if inFrame is set, and returns
+     * false, as a node that is still being resolved.
+     */
+    private boolean push(Expression e, boolean inFrame) {
+        if (workSize == work.length) grow();
+        shapes[workSize].reset(e.getType());
+        work[workSize] = e;
+        steps[workSize] = 0;
+        bound[workSize++] = inFrame;
+        return false;
+    }
+
+    private void grow() {
+        int length = Math.max(workSize * 2, 16);
+        work = Arrays.copyOf(work, length);
+        steps = Arrays.copyOf(steps, length);
+        bound = Arrays.copyOf(bound, length);
+        pending = Arrays.copyOf(pending, length);
+        shapes = Arrays.copyOf(shapes, length);
+        for (int i = workSize; i < shapes.length; i++) {
+            shapes[i] = new Shape();
+        }
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * The size, reach, hash and whether anything is inferred of one node, accumulated from its own parts and its
+     * children. The two halves of the hash are separate lanes mixed with different constants.
+     */
+    private static final class Shape {
+
+        long high;
+        long low;
+        int size;
+        int reach;
+        boolean inferred;
+
+        void reset(Expression.Type type) {
+            high = 0x9E3779B97F4A7C15L;
+            low = 0x632BE59BD9B4E019L;
+            size = 1;
+            reach = 0;
+            inferred = false;
+            add(type.ordinal());
+        }
+
+        void add(long x) {
+            high = Long.rotateLeft(high ^ x, 27) * 0x87C37B91114253D5L + 0x52DCE729;
+            low = Long.rotateLeft(low ^ x, 31) * 0x4CF5AD432745937FL + 0x38495AB5;
+        }
+
+        void add(String name) {
+            add(name.length());
+            for (int i = 0; i < name.length(); i++) {
+                add(name.charAt(i));
+            }
+        }
+
+        void reference(int depth, int slot) {
+            add(depth);
+            add(slot);
+            reach = Math.max(reach, depth < 0 ? UNBOUND : depth + 1);
+        }
+
+        /**
+         * Folds in a resolved child with the given reach, which is inside a frame this node opens if bound is set.
+         */
+        void child(Expression child, int childReach, boolean bound) {
+            if (bound && childReach != UNBOUND) childReach = Math.max(childReach - 1, 0);
+            reach = Math.max(reach, childReach);
+            size += child.getSize();
+            inferred |= child.isInferred();
+            high = Long.rotateLeft(high ^ child.getHashHigh(), 27) * 0x87C37B91114253D5L + 0x52DCE729;
+            low = Long.rotateLeft(low ^ child.getHashLow(), 31) * 0x4CF5AD432745937FL + 0x38495AB5;
+        }
+    }
+}
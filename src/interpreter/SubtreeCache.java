@@ -0,0 +1,286 @@
+package interpreter;
+
+import expression.*;
+import type.Primitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the types of subtrees across checks, so re-checking an edited program only walks the subtrees that
+ * changed. Every subtree gets a digest: structurally identical subtrees (same shape, names and annotations) are
+ * hash-consed bottom-up to the same number, so two subtrees from different parses compare as two ints. The type of
+ * a subtree only depends on its structure and the types of its free variables, so results are keyed on both; a
+ * let or set! that changes a binding the subtree reads changes the key, and stale results are never looked at.
+ * Only successful results are kept. Not thread-safe: share one per checker, not between concurrent checkers.
+ * <p>
+ * The cache holds at most a given number of digests and results together. Once it is full it is emptied before
+ * the next expression is digested; digests are only numbered consistently within one filling, so the results have
+ * to go with them.
+ */
+public class SubtreeCache {
+
+    // subtrees smaller than this are cheaper to check again than to look up
+    private static final int MIN_SIZE = 16;
+
+    private final int maxEntries;
+    private final Map<List<Object>, Integer> shapes = new HashMap<>();
+    private final Map<Key, Primitive> results = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    // the nodes being digested, innermost last, with the number of steps each has taken, whether it is inside a
+    // frame its parent opens, and its shape so far
+    private Expression[] work = new Expression[16];
+    private int[] steps = new int[16];
+    private boolean[] bound = new boolean[16];
+    private Shape[] working = new Shape[16];
+    private int workSize;
+
+    public SubtreeCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Computes the digest and free variables of every subtree of a resolved expression.
+     */
+    public void digest(Expression e) {
+        if (shapes.size() + results.size() > maxEntries) clear();
+        walk(e);
+    }
+
+    public Primitive lookup(Expression e, Primitive[] freeTypes) {
+        Primitive type = results.get(new Key(e.getDigest(), freeTypes));
+        if (type == null) misses++;
+        else hits++;
+        return type;
+    }
+
+    public void store(Expression e, Primitive[] freeTypes, Primitive type) {
+        results.put(new Key(e.getDigest(), freeTypes), type);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void clear() {
+        shapes.clear();
+        results.clear();
+    }
+
+    /**
+     * Digests e without recursing: each node being digested has a frame on the work stack, and finishing a node
+     * folds its digest and free variables into its parent.
+     */
+    private void walk(Expression e) {
+        push(e, false);
+        while (workSize > 0) {
+            int top = workSize - 1;
+            if (resume(work[top], steps[top]++, working[top])) complete(top);
+        }
+    }
+
+    /**
+     * Takes the next step of digesting a node, given how many steps it has taken already: returns whether it is
+     * done, or pushes the next child to digest and returns false.
+     */
+    private boolean resume(Expression e, int step, Shape shape) {
+        switch (e.getType()) {
+            case NUMBER, BOOLEAN -> {
+                return true;
+            }
+            case IDENTIFIER -> {
+                IdentifierExpression identifier = (IdentifierExpression) e;
+                shape.parts.add(identifier.getValue());
+                shape.read(identifier.getValue(), identifier.getDepth(), identifier.getSlot());
+                return true;
+            }
+            case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                BinaryExpression binary = (BinaryExpression) e;
+                if (step == 2) return true;
+                return push(step == 0 ? binary.getLeft() : binary.getRight(), false);
+            }
+            case UNARY -> {
+                return step == 1 || push(((UnaryExpression) e).getOperand(), false);
+            }
+            case CONDITIONAL -> {
+                ConditionalExpression conditional = (ConditionalExpression) e;
+                return switch (step) {
+                    case 0 -> push(conditional.getCondition(), false);
+                    case 1 -> push(conditional.getConsequent(), false);
+                    case 2 -> push(conditional.getAlternate(), false);
+                    default -> true;
+                };
+            }
+            case LET -> {
+                // the values are checked inside the let's frame too, so everything below is one frame deeper
+                LetExpression let = (LetExpression) e;
+                List<Value> variables = let.getVariables();
+                if (step > variables.size()) return true;
+                if (step == variables.size()) return push(let.getBody(), true);
+                shape.parts.add(variables.get(step).id());
+                return push(variables.get(step).value(), true);
+            }
+            case LETREC -> {
+                LetExpression letrec = (LetExpression) e;
+                List<Value> variables = letrec.getVariables();
+                if (step > variables.size()) return true;
+                if (step == variables.size()) return push(letrec.getBody(), true);
+                shape.parts.add(variables.get(step).id());
+                shape.parts.add(letrec.getAnnotations().get(step));
+                return push(variables.get(step).value(), true);
+            }
+            case FUNCTION -> {
+                FunctionExpression function = (FunctionExpression) e;
+                if (step == 1) return true;
+                shape.parts.add(function.getArgName());
+                shape.parts.add(function.getArgType());
+                return push(function.getBody(), true);
+            }
+            case SET -> {
+                SetExpression set = (SetExpression) e;
+                if (step == 1) return true;
+                shape.parts.add(set.getIdentifier());
+                shape.read(set.getIdentifier(), set.getDepth(), set.getSlot());
+                return push(set.getNewValue(), false);
+            }
+            case OBJECT -> {
+                List<Value> attributes = ((ObjectExpression) e).getAttributes();
+                if (step == attributes.size()) return true;
+                shape.parts.add(attributes.get(step).id());
+                return push(attributes.get(step).value(), false);
+            }
+            case FIELD -> {
+                FieldExpression field = (FieldExpression) e;
+                if (step == 1) return true;
+                shape.parts.add(field.getAttribute());
+                return push(field.getObject(), false);
+            }
+        }
+        throw new IllegalStateException(e.getType().toString());
+    }
+
+    /**
+     * Records the digest of the finished node on the given frame, pops it and folds it into its parent.
+     */
+    private void complete(int frame) {
+        Expression e = work[frame];
+        Shape shape = working[frame];
+        Integer digest = shapes.get(shape.parts);
+        if (digest == null) {
+            digest = shapes.size();
+            shapes.put(shape.parts, digest);
+        }
+        FreeVariables free = shape.free();
+        e.setDigest(digest, e.getSize() >= MIN_SIZE ? free : null);
+
+        work[frame] = null;
+        working[frame] = null;
+        workSize--;
+        if (frame > 0) working[frame - 1].child(e, free, bound[frame]);
+    }
+
+    /**
+     * Pushes a frame for digesting e, which is inside a frame its parent opens if inFrame is set, and returns
+     * false, as a node that is still being digested.
+     */
+    private boolean push(Expression e, boolean inFrame) {
+        if (workSize == work.length) grow();
+        work[workSize] = e;
+        steps[workSize] = 0;
+        bound[workSize] = inFrame;
+        working[workSize++] = new Shape(e.getType());
+        return false;
+    }
+
+    private void grow() {
+        work = Arrays.copyOf(work, workSize * 2);
+        steps = Arrays.copyOf(steps, workSize * 2);
+        bound = Arrays.copyOf(bound, workSize * 2);
+        working = Arrays.copyOf(working, workSize * 2);
+    }
+
+    /**
+     * The parts of one node being digested: its kind, names and annotations followed by the digests of its
+     * children, and the free variables gathered from them.
+     */
+    private final class Shape {
+
+        final List<Object> parts = new ArrayList<>(4);
+        final List<String> names = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        Set<String> seen;
+
+        Shape(Expression.Type type) {
+            parts.add(type);
+        }
+
+        /**
+         * Folds in a digested child with the given free variables, which is inside a frame this node opens if bound is set.
+         */
+        void child(Expression child, FreeVariables free, boolean bound) {
+            parts.add(child.getDigest());
+            for (int i = 0; i < free.size(); i++) {
+                int depth = free.depths()[i];
+                if (bound && depth == 0) continue;
+                read(free.names()[i], bound && depth > 0 ? depth - 1 : depth, free.slots()[i]);
+            }
+        }
+
+        void read(String name, int depth, int slot) {
+            // free occurrences of the same name all see the same binding
+            if (seen != null ? seen.contains(name) : names.contains(name)) return;
+            if (seen == null && names.size() == 8) seen = new HashSet<>(names);
+            if (seen != null) seen.add(name);
+            names.add(name);
+            depths.add(depth);
+            slots.add(slot);
+        }
+
+        FreeVariables free() {
+            if (names.isEmpty()) return FreeVariables.NONE;
+            int[] d = new int[names.size()];
+            int[] s = new int[names.size()];
+            for (int i = 0; i < d.length; i++) {
+                d[i] = depths.get(i);
+                s[i] = slots.get(i);
+            }
+            return new FreeVariables(names.toArray(new String[0]), d, s);
+        }
+    }
+
+    private static final class Key {
+
+        private final int digest;
+        private final Primitive[] types;
+        private final int hash;
+
+        Key(int digest, Primitive[] types) {
+            this.digest = digest;
+            this.types = types;
+            this.hash = 31 * digest + Arrays.hashCode(types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key key)) return false;
+            return digest == key.digest && Arrays.equals(types, key.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns identifier names into dense integer symbols.
+ */
+public class SymbolTable {
+
+    private Map<String, Integer> symbols = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public int intern(String name) {
+        Integer symbol = symbols.get(name);
+        if (symbol != null) return symbol;
+        symbols.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    public String name(int symbol) {
+        return names.get(symbol);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Forgets every name, so the next one interned is symbol 0 again. The map is replaced rather than cleared,
+     * since clearing walks every bucket the largest set of names ever needed.
+     */
+    public void clear() {
+        symbols = new HashMap<>();
+        names.clear();
+    }
+}
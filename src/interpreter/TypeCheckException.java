@@ -2,6 +2,7 @@ package interpreter;
 
 public class TypeCheckException extends Exception {
     public TypeCheckException(String message) {
-        super(message);
+        // only the message is ever looked at, so the stack trace is not filled in
+        super(message, null, false, false);
     }
 }
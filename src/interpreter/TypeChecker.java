@@ -3,207 +3,524 @@ package interpreter;
 import expression.*;
 import type.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Checks expressions, reporting errors to an ErrorLog rather than throwing them. Checking stops at the first error
+ * unless all errors are wanted, in which case the failing node gets the error type and checking carries on.
+ * <p>
+ * An expression in which some fun leaves the type of its argument out has its type inferred (see Inference) rather
+ * than checked here; every other expression is checked exactly as before.
+ */
 public class TypeChecker {
 
-    private final Map<String, Primitive> variables = new HashMap<>();
+    private final Resolver resolver = new Resolver();
+    private final ErrorLog errors = new ErrorLog();
+    private boolean allErrors;
+    // results of subtrees checked before, or null to always check from scratch
+    private final SubtreeCache cache;
+    private final ClosedTermCache closedTerms;
+    // for expressions that leave some argument type out, made the first time one is checked
+    private Inference inference;
+
+    // the types of the variables of every frame currently entered, innermost last
+    private Primitive[] slots = new Primitive[16];
+    private int slotCount;
+    private int[] frameBases = new int[16];
+    private int frameCount;
+    private int peakSlots;
+
+    // the nodes being checked, innermost last, with the number of steps each has taken, where its type goes and
+    // the free variable types its type will be cached under, and how many errors had been reported when it started
+    private Expression[] work = new Expression[16];
+    private int[] steps = new int[16];
+    private int[] targets = new int[16];
+    private Primitive[][] keys = new Primitive[16][];
+    private int[] marks = new int[16];
+    private int workSize;
+    // the types of checked children whose parents have not taken them yet
+    private Primitive[] results = new Primitive[16];
+    private int resultCount;
+
+    public TypeChecker() {
+        this(null);
+    }
+
+    /**
+     * Creates a checker that reuses the results of subtrees it has checked before, so checking a program again
+     * after an edit only walks the subtrees that changed.
+     */
+    public TypeChecker(SubtreeCache cache) {
+        this(cache, ClosedTermCache.shared());
+    }
+
+    /**
+     * Creates a checker with the given caches, either of which may be null to check without it.
+     */
+    public TypeChecker(SubtreeCache cache, ClosedTermCache closedTerms) {
+        this.cache = cache;
+        this.closedTerms = closedTerms;
+    }
 
     public String run(List<Expression> expressions) {
-        String result = "";
+        allErrors = false;
+        Primitive type = null;
         for (Expression e : expressions) {
-            try {
-                result = makeNewType(typeCheck(e));
-            } catch (TypeCheckException ex) {
-                return makeNewError(ex.getMessage());
-            }
+            type = checkExpression(e);
+            if (errors.size() > 0) return makeNewError(errors.get(0));
         }
-        return result;
+        return type == null ? "" : makeNewType(type);
     }
 
-    private Primitive typeCheck(Expression e) throws TypeCheckException {
-        return switch (e.getType()) {
-            case NUMBER -> new TruePrimitive(Primitive.Type.NUMBER);
-            case BOOLEAN -> new TruePrimitive(Primitive.Type.BOOLEAN);
-            case IDENTIFIER -> checkIdentifier(e);
-            case ARITHMETIC -> checkArithmeticRelational((BinaryExpression) e, Primitive.Type.NUMBER);
-            case RELATIONAL -> checkArithmeticRelational((BinaryExpression) e, Primitive.Type.BOOLEAN);
-            case LOGICAL -> checkLogical((BinaryExpression) e);
-            case UNARY -> checkUnary((UnaryExpression) e);
-            case CONDITIONAL -> checkConditional((ConditionalExpression) e);
-            case LET -> checkLet((LetExpression) e);
-            case APP -> checkApp((BinaryExpression) e);
-            case FUNCTION -> checkFunction((FunctionExpression) e);
-            case BEGIN -> checkBegin((BinaryExpression) e);
-            case SET -> checkSet((SetExpression) e);
-            case OBJECT -> checkObject((ObjectExpression) e);
-            case FIELD -> checkField((FieldExpression) e);
-        };
+    /**
+     * Checks every expression, carrying on past errors, and returns a line for each error in the order they were
+     * found, or the type of the last expression if there were none.
+     */
+    public List<String> runAll(List<Expression> expressions) {
+        allErrors = true;
+        errors.clear();
+        Primitive type = null;
+        for (Expression e : expressions) {
+            type = checkExpression(e);
+        }
+        allErrors = false;
+        return makeNewLines(errors, type);
     }
 
-    private Primitive checkIdentifier(Expression e) throws TypeCheckException {
-        if (variables.containsKey(e.getValue())) {
-            return variables.get(e.getValue());
-        } else throw new TypeCheckException("unbound identifier");
+    /**
+     * Checks the expressions in order and writes the line for each to out as soon as it has been checked: its
+     * type, or its error, after which checking stops. If all errors are wanted, every error of an expression is
+     * written in place of its type and checking carries on.
+     */
+    public void runEach(List<Expression> expressions, boolean allErrors, Appendable out) throws IOException {
+        this.allErrors = allErrors;
+        errors.clear();
+        for (Expression e : expressions) {
+            int from = allErrors ? errors.size() : 0;
+            Primitive type = checkExpression(e);
+            if (writeLines(errors, from, allErrors, type, out) && !allErrors) break;
+        }
+        this.allErrors = false;
     }
 
-    private Primitive checkArithmeticRelational(BinaryExpression e, Primitive.Type resultType) throws TypeCheckException {
-        Primitive left = typeCheck(e.getLeft());
-        Primitive right = typeCheck(e.getRight());
+    /**
+     * Checks one more top-level expression. Top-level expressions share no bindings, since every binding is
+     * scoped to the body of its let or fun.
+     */
+    public String check(Expression e) throws TypeCheckException {
+        allErrors = false;
+        Primitive type = checkExpression(e);
+        if (errors.size() > 0) throw new TypeCheckException(errors.get(0));
+        return makeNewType(type);
+    }
 
-        if (left.getType() != Primitive.Type.NUMBER) {
-            throw new TypeCheckException("expected type NUMBER but got " + left.getType());
-        } else if (right.getType() != Primitive.Type.NUMBER) {
-            throw new TypeCheckException("expected type NUMBER but got " + right.getType());
+    private Primitive checkExpression(Expression e) {
+        if (!allErrors) errors.clear();
+        resolver.resolve(e);
+        if (e.isInferred()) {
+            if (inference == null) inference = new Inference();
+            return inference.infer(e, errors, allErrors);
         }
+        if (cache != null) cache.digest(e);
+        return typeCheck(e);
+    }
 
-        return new TruePrimitive(resultType);
+    /**
+     * Forgets the names of the expressions checked so far, so that a checker fed an unbounded stream of top-level
+     * expressions only keeps what the largest of them needs. The work arrays are kept for the next expression.
+     */
+    public void forgetNames() {
+        resolver.forgetNames();
     }
 
-    private Primitive checkLogical(BinaryExpression e) throws TypeCheckException {
-        Primitive left = typeCheck(e.getLeft());
-        Primitive right = typeCheck(e.getRight());
+    /**
+     * Returns the largest number of bindings that were live at once, while resolving or checking.
+     */
+    public int getPeakEnvironment() {
+        return Math.max(resolver.getPeakEnvironment(), peakSlots);
+    }
 
-        if (left.getType() != Primitive.Type.BOOLEAN) {
-            throw new TypeCheckException("expected type BOOLEAN but got " + left.getType());
-        } else if (right.getType() != Primitive.Type.BOOLEAN) {
-            throw new TypeCheckException("expected type BOOLEAN but got " + right.getType());
+    /**
+     * Checks e without recursing: every node being checked has a frame on the work stack that records how many
+     * steps it has taken and the slot of the result stack its type goes to, and the types of checked children
+     * wait in their slots until their parent takes them. Deep nesting therefore costs heap, not Java stack.
+     */
+    private Primitive typeCheck(Expression e) {
+        int target = reserve(1);
+        visitInto(e, target);
+        while (workSize > 0) {
+            int top = workSize - 1;
+            Expression node = work[top];
+            int step = steps[top]++;
+            Primitive type = step == 0 && lookup(top) ? null : resume(node, step);
+            if (!allErrors && errors.size() > 0) {
+                unwind();
+                return TruePrimitive.ERROR;
+            }
+            if (type == null) continue;
+            store(top, type);
+            results[targets[top]] = type;
+            work[--workSize] = null;
         }
-
-        return left;
+        return take();
     }
 
-    private Primitive checkUnary(UnaryExpression e) throws TypeCheckException {
-        Primitive operand = typeCheck(e.getOperand());
-
-        if (operand.getType() != Primitive.Type.BOOLEAN) {
-            throw new TypeCheckException("expected type BOOLEAN but got " + operand.getType());
+    /**
+     * Takes the next step of checking a node, given how many steps it has taken already: returns its type, or
+     * visits the children to check next and returns null. Children are visited all at once where no binding
+     * changes between them, and one at a time where one does.
+     */
+    private Primitive resume(Expression e, int step) {
+        switch (e.getType()) {
+            case NUMBER -> {
+                return TruePrimitive.NUMBER;
+            }
+            case BOOLEAN -> {
+                return TruePrimitive.BOOLEAN;
+            }
+            case IDENTIFIER -> {
+                IdentifierExpression identifier = (IdentifierExpression) e;
+                if (identifier.getDepth() < 0) return TypeRules.unbound(errors);
+                return variable(identifier.getDepth(), identifier.getSlot());
+            }
+            case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN -> {
+                BinaryExpression binary = (BinaryExpression) e;
+                if (step == 0) {
+                    int base = reserve(2);
+                    visitInto(binary.getRight(), base + 1);
+                    visitInto(binary.getLeft(), base);
+                    return null;
+                }
+                Primitive left = results[resultCount - 2];
+                Primitive right = results[resultCount - 1];
+                release(2);
+                return switch (e.getType()) {
+                    case ARITHMETIC -> TypeRules.arithmeticRelational(left, right, Primitive.Type.NUMBER, errors);
+                    case RELATIONAL -> TypeRules.arithmeticRelational(left, right, Primitive.Type.BOOLEAN, errors);
+                    case LOGICAL -> TypeRules.logical(left, right, errors);
+                    case APP -> TypeRules.app(left, right, errors);
+                    default -> right;
+                };
+            }
+            case UNARY -> {
+                if (step == 0) return visit(((UnaryExpression) e).getOperand());
+                return TypeRules.unary(take(), errors);
+            }
+            case CONDITIONAL -> {
+                ConditionalExpression conditional = (ConditionalExpression) e;
+                if (step == 0) {
+                    int base = reserve(3);
+                    visitInto(conditional.getAlternate(), base + 2);
+                    visitInto(conditional.getConsequent(), base + 1);
+                    visitInto(conditional.getCondition(), base);
+                    return null;
+                }
+                Primitive condition = results[resultCount - 3];
+                Primitive consequent = results[resultCount - 2];
+                Primitive alternate = results[resultCount - 1];
+                release(3);
+                return TypeRules.conditional(condition, consequent, alternate, errors);
+            }
+            case LET -> {
+                return resumeLet((LetExpression) e, step);
+            }
+            case LETREC -> {
+                return resumeLetrec((LetExpression) e, step);
+            }
+            case FUNCTION -> {
+                FunctionExpression function = (FunctionExpression) e;
+                if (step == 0) {
+                    enterFrame(1);
+                    slots[frameBases[frameCount - 1]] = function.getArgType();
+                    return visit(function.getBody());
+                }
+                exitFrame();
+                return TypeRules.function(function.getArgType(), take());
+            }
+            case SET -> {
+                SetExpression set = (SetExpression) e;
+                if (step == 0) {
+                    if (set.getDepth() < 0) TypeRules.unbound(errors);
+                    return visit(set.getNewValue());
+                }
+                if (set.getDepth() < 0) {
+                    release(1);
+                    return TruePrimitive.VOID;
+                }
+                return TypeRules.set(variable(set.getDepth(), set.getSlot()), take(), errors);
+            }
+            case OBJECT -> {
+                List<Value> values = ((ObjectExpression) e).getAttributes();
+                int count = values.size();
+                if (step == 0) {
+                    int base = reserve(count);
+                    for (int i = count - 1; i >= 0; i--) {
+                        visitInto(values.get(i).value(), base + i);
+                    }
+                    return null;
+                }
+                List<Attribute> attributes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    attributes.add(new Attribute(values.get(i).id(), results[resultCount - count + i]));
+                }
+                release(count);
+                return TypeRules.object(attributes);
+            }
+            case FIELD -> {
+                FieldExpression field = (FieldExpression) e;
+                if (step == 0) return visit(field.getObject());
+                ObjectType objectType = TypeRules.fieldObject(take(), errors);
+                if (objectType == null) return TruePrimitive.ERROR;
+                if (field.getResolvedType() != objectType) {
+                    int slot = TypeRules.fieldSlot(objectType, field.getAttribute(), errors);
+                    if (slot < 0) return TruePrimitive.ERROR;
+                    field.resolve(objectType, slot);
+                }
+                return objectType.getAttributes().get(field.getSlot()).type();
+            }
         }
-
-        return operand;
+        throw new IllegalStateException(e.getType().toString());
     }
 
-    private Primitive checkConditional(ConditionalExpression e) throws TypeCheckException {
-        Primitive condition = typeCheck(e.getCondition());
-        Primitive consequent = typeCheck(e.getConsequent());
-        Primitive alternate = typeCheck(e.getAlternate());
-
-        if (condition.getType() != Primitive.Type.BOOLEAN) {
-            throw new TypeCheckException("first expression in a conditional statement must be a boolean");
+    private Primitive resumeLet(LetExpression e, int step) {
+        // step i binds the value checked in the step before it and checks value i, the step after the last
+        // value checks the body, and the one after that leaves the frame
+        List<Value> variables = e.getVariables();
+        int count = variables.size();
+        if (step > count) {
+            exitFrame();
+            return take();
         }
 
-        if (!consequent.equals(alternate)) {
-            throw new TypeCheckException("type mismatch in conditional branches: " + consequent.getType() + ", " + alternate.getType());
-        }
+        if (step == 0) enterFrame(count);
+        else slots[frameBases[frameCount - 1] + step - 1] = take();
 
-        return consequent;
+        if (step == count) return visit(e.getBody());
+        if (e.isRedefinition(step)) TypeRules.redefinition(variables.get(step).id(), errors);
+        return visit(variables.get(step).value());
     }
 
-    private Primitive checkLet(LetExpression e) throws TypeCheckException {
-        for (Value v : e.getVariables()) {
-            if (variables.containsKey(v.id())) {
-                throw new TypeCheckException("variable " + v.id() + " has already been defined");
+    private Primitive resumeLetrec(LetExpression e, int step) {
+        // the variables take their annotated types before any value is checked, and step i checks the value
+        // checked in the step before it against the annotation of its variable
+        List<Value> variables = e.getVariables();
+        int count = variables.size();
+        if (step > count) {
+            exitFrame();
+            return take();
+        }
+
+        if (step == 0) {
+            enterFrame(count);
+            for (int i = 0; i < count; i++) {
+                slots[frameBases[frameCount - 1] + i] = e.getAnnotations().get(i);
+                if (e.isRedefinition(i)) TypeRules.redefinition(variables.get(i).id(), errors);
             }
-            variables.put(v.id(), typeCheck(v.value()));
+        } else {
+            TypeRules.binding(e.getAnnotations().get(step - 1), take(), errors);
         }
 
-        return typeCheck(e.getBody());
+        if (step == count) return visit(e.getBody());
+        return visit(variables.get(step).value());
     }
 
-    private Primitive checkApp(BinaryExpression e) throws TypeCheckException {
-        Primitive left = typeCheck(e.getLeft());
-        Primitive right = typeCheck(e.getRight());
-
-        if (left.getType() != Primitive.Type.ARROW) {
-            throw new TypeCheckException("first expression in an application must be a function");
+    /**
+     * Answers the node on the given frame from the caches if they have it, popping its frame, and notes what it
+     * should be stored under otherwise. Returns whether it was answered. A cached outcome reports its errors
+     * again, but one that stopped at its first error cannot answer for all of them.
+     */
+    private boolean lookup(int frame) {
+        Expression e = work[frame];
+        marks[frame] = errors.size();
+        if (isShared(e)) {
+            ClosedTermCache.Outcome outcome = closedTerms.get(e);
+            if (outcome != null && (outcome.type() != null || !allErrors)) {
+                for (String error : outcome.errors()) {
+                    errors.report(error);
+                }
+                results[targets[frame]] = outcome.type() == null ? TruePrimitive.ERROR : outcome.type();
+                work[--workSize] = null;
+                return true;
+            }
         }
 
-        ArrowType arrow = (ArrowType) left;
-        if (!arrow.getArgument().equals(right)) {
-            throw new TypeCheckException("type mismatch in function argument and call: " + arrow.getArgument().getType() + ", " + right.getType());
+        FreeVariables free = cache == null ? null : e.getFreeVariables();
+        if (free == null) return false;
+        Primitive[] freeTypes = new Primitive[free.size()];
+        for (int i = 0; i < freeTypes.length; i++) {
+            // a subtree reading an unbound name fails, so there is nothing to reuse
+            if (free.depths()[i] < 0) return false;
+            freeTypes[i] = variable(free.depths()[i], free.slots()[i]);
         }
 
-        return arrow.getResult();
+        Primitive type = cache.lookup(e, freeTypes);
+        if (type != null) {
+            results[targets[frame]] = type;
+            work[--workSize] = null;
+            return true;
+        }
+        keys[frame] = freeTypes;
+        return false;
     }
 
-    private Primitive checkFunction(FunctionExpression e) throws TypeCheckException {
-        variables.put(e.getArgName(), e.getArgType());
-        Primitive body = typeCheck(e.getBody());
+    /**
+     * Caches the type of the node on the given frame. Subtrees are only cached without errors, since a cached type
+     * does not report them again.
+     */
+    private void store(int frame, Primitive type) {
+        Expression e = work[frame];
+        if (keys[frame] != null) {
+            if (errors.size() == marks[frame]) cache.store(e, keys[frame], type);
+            keys[frame] = null;
+        }
+        if (isShared(e)) closedTerms.put(e, new ClosedTermCache.Outcome(type, errors.since(marks[frame])));
+    }
 
-        return new ArrowType(e.getArgType(), body);
+    /**
+     * Abandons every node still on the work stack after the first error, recording it for the closed ones that
+     * were being checked (rather than waiting for their turn), and leaves every frame they entered.
+     */
+    private void unwind() {
+        List<String> first = List.of(errors.get(0));
+        while (workSize > 0) {
+            workSize--;
+            Expression e = work[workSize];
+            if (steps[workSize] > 0 && isShared(e)) {
+                closedTerms.put(e, new ClosedTermCache.Outcome(null, first));
+            }
+            work[workSize] = null;
+            keys[workSize] = null;
+        }
+        release(resultCount);
+        while (frameCount > 0) {
+            exitFrame();
+        }
     }
 
-    private Primitive checkBegin(BinaryExpression e) throws TypeCheckException {
-        typeCheck(e.getLeft());
+    private boolean isShared(Expression e) {
+        return closedTerms != null && e.isClosed() && e.getSize() >= ClosedTermCache.MIN_SIZE;
+    }
 
-        return typeCheck(e.getRight());
+    /**
+     * Visits one child into a new slot of the result stack and returns null, the type of a node still being
+     * checked.
+     */
+    private Primitive visit(Expression e) {
+        visitInto(e, reserve(1));
+        return null;
     }
 
-    private Primitive checkSet(SetExpression e) throws TypeCheckException {
-        if (variables.containsKey(e.getIdentifier())) {
-            Primitive newValue = typeCheck(e.getNewValue());
-            if (!variables.get(e.getIdentifier()).equals(newValue)) {
-                throw new TypeCheckException("type mismatch in assignment: " + variables.get(e.getIdentifier()).getType() + ", " + newValue.getType());
+    /**
+     * Stores the type of a leaf that cannot fail in the given slot right away, and pushes a frame for checking
+     * anything else into it. Leaves are about half the nodes, and are too small to be cached.
+     */
+    private void visitInto(Expression e, int target) {
+        switch (e.getType()) {
+            case NUMBER -> {
+                results[target] = TruePrimitive.NUMBER;
+                return;
+            }
+            case BOOLEAN -> {
+                results[target] = TruePrimitive.BOOLEAN;
+                return;
+            }
+            case IDENTIFIER -> {
+                IdentifierExpression identifier = (IdentifierExpression) e;
+                if (identifier.getDepth() >= 0) {
+                    results[target] = variable(identifier.getDepth(), identifier.getSlot());
+                    return;
+                }
             }
-            variables.put(e.getIdentifier(), newValue);
-        } else throw new TypeCheckException("unbound identifier");
+        }
+        if (workSize == work.length) grow();
+        work[workSize] = e;
+        steps[workSize] = 0;
+        targets[workSize++] = target;
+    }
 
-        return new TruePrimitive(Primitive.Type.VOID);
+    private void grow() {
+        work = Arrays.copyOf(work, workSize * 2);
+        steps = Arrays.copyOf(steps, workSize * 2);
+        targets = Arrays.copyOf(targets, workSize * 2);
+        keys = Arrays.copyOf(keys, workSize * 2);
+        marks = Arrays.copyOf(marks, workSize * 2);
     }
 
-    private Primitive checkObject(ObjectExpression e) throws TypeCheckException {
-        List<Attribute> attributes = new ArrayList<>();
-        for (Value v : e.getAttributes()) {
-            attributes.add(new Attribute(v.id(), typeCheck(v.value())));
+    private int reserve(int count) {
+        if (resultCount + count > results.length) {
+            results = Arrays.copyOf(results, Math.max(results.length * 2, resultCount + count));
         }
+        resultCount += count;
+        return resultCount - count;
+    }
 
-        return new ObjectType(attributes);
+    private Primitive take() {
+        return results[--resultCount];
     }
 
-    private Primitive checkField(FieldExpression e) throws TypeCheckException {
-        Primitive object = typeCheck(e.getObject());
+    // types are interned for good, so the slots given up are not cleared
+    private void release(int count) {
+        resultCount -= count;
+    }
 
-        if (object.getType() != Primitive.Type.OBJECT) {
-            throw new TypeCheckException("expected type OBJECT but got " + object.getType());
-        }
+    private Primitive variable(int depth, int slot) {
+        return slots[frameBases[frameCount - 1 - depth] + slot];
+    }
 
-        ObjectType objectType = (ObjectType) object;
-        for (Attribute a : objectType.getAttributes()) {
-            if (a.identifier().equals(e.getAttribute())) return a.type();
-        }
+    private void enterFrame(int size) {
+        if (frameCount == frameBases.length) frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+        if (slotCount + size > slots.length) slots = Arrays.copyOf(slots, Math.max(slots.length * 2, slotCount + size));
+        frameBases[frameCount++] = slotCount;
+        slotCount += size;
+        peakSlots = Math.max(peakSlots, slotCount);
+    }
 
-        throw new TypeCheckException("unknown attribute");
+    private void exitFrame() {
+        int base = frameBases[--frameCount];
+        Arrays.fill(slots, base, slotCount, null);
+        slotCount = base;
     }
 
-    private String makeNewType(Primitive primitive) {
-        return "(type " + stringify(primitive) + ")";
+    static String makeNewType(Primitive primitive) {
+        return "(type " + TypePrinter.toString(primitive) + ")";
     }
 
-    private String makeNewError(String reason) {
+    public static String makeNewError(String reason) {
         return "(error \"" + reason + " (banana)\")";
     }
 
-    private String stringify(Primitive primitive) {
-        return switch (primitive.getType()) {
-            case NUMBER -> "(number)";
-            case BOOLEAN -> "(boolean)";
-            case VOID -> "(void)";
-            case ARROW -> {
-                ArrowType arrow = (ArrowType) primitive;
-                yield "(-> " + stringify(arrow.getArgument()) + " " + stringify(arrow.getResult()) + ")";
-            }
-            case OBJECT -> {
-                ObjectType object = (ObjectType) primitive;
-                StringBuilder sb = new StringBuilder("(object");
-                for (Attribute a : object.getAttributes()) {
-                    sb.append(" [").append(a.identifier()).append(" ").append(stringify(a.type())).append("]");
-                }
-                sb.append(")");
-                yield sb.toString();
-            }
-        };
+    /**
+     * Writes a line for each error logged from the given one on (or only that one, unless all errors are wanted),
+     * or else the line for the given type, and returns whether there were errors.
+     */
+    static boolean writeLines(ErrorLog errors, int from, boolean allErrors, Primitive type, Appendable out)
+            throws IOException {
+        if (errors.size() == from) {
+            out.append("(type ");
+            TypePrinter.print(type, out);
+            out.append(')').append(System.lineSeparator());
+            return false;
+        }
+        int to = allErrors ? errors.size() : from + 1;
+        for (int i = from; i < to; i++) {
+            out.append(makeNewError(errors.get(i))).append(System.lineSeparator());
+        }
+        return true;
+    }
+
+    /**
+     * Returns a line for each error logged, or the line for the given type if there were none (an empty one if
+     * there was no expression to check), as run would.
+     */
+    static List<String> makeNewLines(ErrorLog errors, Primitive type) {
+        if (errors.size() == 0) return List.of(type == null ? "" : makeNewType(type));
+        List<String> lines = new ArrayList<>(errors.size());
+        for (String error : errors.getMessages()) {
+            lines.add(makeNewError(error));
+        }
+        return lines;
     }
 }
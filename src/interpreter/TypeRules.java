@@ -0,0 +1,144 @@
+package interpreter;
+
+import type.ArrowType;
+import type.Attribute;
+import type.ObjectType;
+import type.Primitive;
+import type.Subtyping;
+import type.TruePrimitive;
+
+import java.util.List;
+
+/**
+ * The typing rules, shared by the checkers over both tree encodings. Each rule takes the types of the parts of a
+ * construct (checked in source order by the caller) and returns the type of the construct, reporting what is wrong
+ * with it to the error log. A construct that cannot be given a type gets the error type, and a part of the error
+ * type never makes a rule report anything more: the mistake has been reported where it was made, and everything
+ * built on it is given the error type or the type it would have had, so checking can go on.
+ * <p>
+ * A value may be used wherever a supertype of its type is expected: as the argument of a function, as the new
+ * value of a variable, and as either branch of a conditional, whose type is that of the more general branch.
+ * <p>
+ * A recursive type is interchangeable with its unfolding, so wherever a rule asks what kind of type it has it is
+ * told the kind of the unfolding.
+ */
+final class TypeRules {
+
+    private static final Primitive ERROR = TruePrimitive.ERROR;
+
+    private TypeRules() {
+    }
+
+    static Primitive arithmeticRelational(Primitive left, Primitive right, Primitive.Type resultType,
+                                          ErrorLog errors) {
+        expect(left, Primitive.Type.NUMBER, errors);
+        expect(right, Primitive.Type.NUMBER, errors);
+
+        return TruePrimitive.of(resultType);
+    }
+
+    static Primitive logical(Primitive left, Primitive right, ErrorLog errors) {
+        expect(left, Primitive.Type.BOOLEAN, errors);
+        expect(right, Primitive.Type.BOOLEAN, errors);
+
+        return TruePrimitive.BOOLEAN;
+    }
+
+    static Primitive unary(Primitive operand, ErrorLog errors) {
+        expect(operand, Primitive.Type.BOOLEAN, errors);
+
+        return TruePrimitive.BOOLEAN;
+    }
+
+    static Primitive conditional(Primitive condition, Primitive consequent, Primitive alternate, ErrorLog errors) {
+        if (kind(condition) != Primitive.Type.BOOLEAN && condition != ERROR) {
+            errors.report("first expression in a conditional statement must be a boolean");
+        }
+
+        if (consequent == ERROR) return alternate;
+        if (alternate == ERROR || Subtyping.isSubtype(alternate, consequent)) return consequent;
+        if (Subtyping.isSubtype(consequent, alternate)) return alternate;
+
+        return errors.report("type mismatch in conditional branches: " + kind(consequent) + ", " + kind(alternate));
+    }
+
+    static Primitive app(Primitive function, Primitive argument, ErrorLog errors) {
+        if (kind(function) != Primitive.Type.ARROW) {
+            if (function == ERROR) return ERROR;
+            return errors.report("first expression in an application must be a function");
+        }
+
+        ArrowType arrow = (ArrowType) function.unfold();
+        if (argument != ERROR && !Subtyping.isSubtype(argument, arrow.getArgument())) {
+            errors.report("type mismatch in function argument and call: " + kind(arrow.getArgument()) + ", " + kind(argument));
+        }
+
+        return arrow.getResult();
+    }
+
+    static Primitive function(Primitive argument, Primitive body) {
+        return body == ERROR ? ERROR : ArrowType.of(argument, body);
+    }
+
+    static Primitive set(Primitive variable, Primitive newValue, ErrorLog errors) {
+        if (variable != ERROR && newValue != ERROR && !Subtyping.isSubtype(newValue, variable)) {
+            errors.report("type mismatch in assignment: " + kind(variable) + ", " + kind(newValue));
+        }
+
+        return TruePrimitive.VOID;
+    }
+
+    /**
+     * Checks the value of a letrec variable against the type the variable is annotated with, which it was already
+     * given while its value, and those of the others, were checked.
+     */
+    static void binding(Primitive annotation, Primitive value, ErrorLog errors) {
+        if (value != ERROR && !Subtyping.isSubtype(value, annotation)) {
+            errors.report("type mismatch in recursive binding: " + kind(annotation) + ", " + kind(value));
+        }
+    }
+
+    static Primitive object(List<Attribute> attributes) {
+        for (Attribute a : attributes) {
+            if (a.type() == ERROR) return ERROR;
+        }
+
+        return ObjectType.of(attributes);
+    }
+
+    /**
+     * Returns the object a field is read from, or null if it is not one.
+     */
+    static ObjectType fieldObject(Primitive object, ErrorLog errors) {
+        if (kind(object) == Primitive.Type.OBJECT) return (ObjectType) object.unfold();
+        if (object != ERROR) errors.report("expected type OBJECT but got " + kind(object));
+        return null;
+    }
+
+    /**
+     * Returns the position of the attribute a field reads, or -1 if the object has none by that name.
+     */
+    static int fieldSlot(ObjectType object, String attribute, ErrorLog errors) {
+        int slot = object.indexOf(attribute);
+        if (slot < 0) errors.report("unknown attribute");
+        return slot;
+    }
+
+    static Primitive unbound(ErrorLog errors) {
+        return errors.report("unbound identifier");
+    }
+
+    static void redefinition(String name, ErrorLog errors) {
+        errors.report("variable " + name + " has already been defined");
+    }
+
+    private static void expect(Primitive type, Primitive.Type expected, ErrorLog errors) {
+        if (kind(type) != expected && type != ERROR) {
+            errors.report("expected type " + expected + " but got " + kind(type));
+        }
+    }
+
+    private static Primitive.Type kind(Primitive type) {
+        return type.unfold().getType();
+    }
+}
@@ -1,182 +1,124 @@
 package parser;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.function.Function;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single deterministic automaton recognizing every token of the language. The table is built once from the
+ * keyword list below merged with the identifier and number loops, so the tokenizer can find the longest match
+ * in one left-to-right pass. Keywords win ties against identifiers of the same length (so "let" is LET but
+ * "letter" is an identifier).
+ */
 public class Automata {
 
-    public static SortedMap<Token.Type, Function<String, Integer>> getAutomata() {
-        SortedMap<Token.Type, Function<String, Integer>> automata = new TreeMap<>();
-
-        automata.put(Token.Type.IDENTIFIER, Automata::identifier);
-        automata.put(Token.Type.TYPE_NUM, Automata::typeNum);
-        automata.put(Token.Type.TYPE_BOOL, Automata::typeBool);
-        automata.put(Token.Type.TYPE_VOID, Automata::typeVoid);
-        automata.put(Token.Type.PAREN_OPEN, Automata::parenOpen);
-        automata.put(Token.Type.PAREN_CLOSE, Automata::parenClosed);
-        automata.put(Token.Type.BRACKET_OPEN, Automata::bracketOpen);
-        automata.put(Token.Type.BRACKET_CLOSE, Automata::bracketClosed);
-        automata.put(Token.Type.COLON, Automata::colon);
-        automata.put(Token.Type.NUMBER, Automata::number);
-        automata.put(Token.Type.BOOL, Automata::bool);
-        automata.put(Token.Type.PLUS, Automata::plus);
-        automata.put(Token.Type.MINUS, Automata::minus);
-        automata.put(Token.Type.MULTIPLY, Automata::multiply);
-        automata.put(Token.Type.DIVIDE, Automata::divide);
-        automata.put(Token.Type.EQUALS, Automata::equals);
-        automata.put(Token.Type.LESS_THAN, Automata::lessThan);
-        automata.put(Token.Type.GREATER_THAN, Automata::greaterThan);
-        automata.put(Token.Type.AND, Automata::and);
-        automata.put(Token.Type.OR, Automata::or);
-        automata.put(Token.Type.NOT, Automata::not);
-        automata.put(Token.Type.IF, Automata::ifX);
-        automata.put(Token.Type.LET, Automata::let);
-        automata.put(Token.Type.APP, Automata::app);
-        automata.put(Token.Type.FUN, Automata::fun);
-        automata.put(Token.Type.ARROW, Automata::arrow);
-        automata.put(Token.Type.BEGIN, Automata::begin);
-        automata.put(Token.Type.SET, Automata::set);
-        automata.put(Token.Type.OBJECT, Automata::object);
-        automata.put(Token.Type.FIELD, Automata::field);
-
-        return automata;
-    }
-
-    private static int identifier(String s) {
-        for (int i = 0; i < s.length(); i++) {
-            if (!Character.isAlphabetic(s.charAt(i))) return i;
+    public static final int START = 0;
+    public static final int REJECT = -1;
+
+    private static final int IDENTIFIER = 1;
+    private static final int NUMBER = 2;
+    private static final int ALPHABET = 128;
+
+    private static final String[] KEYWORDS = {
+            "num", "bool", "void", "(", ")", "[", "]", ":", "#true", "#false", "+", "-", "*", "/", "=", "<", ">",
+            "and", "or", "not", "if", "let", "app", "fun", "->", "begin", "set!", "object", "field",
+    };
+
+    private static final Token.Type[] KEYWORD_TYPES = {
+            Token.Type.TYPE_NUM, Token.Type.TYPE_BOOL, Token.Type.TYPE_VOID, Token.Type.PAREN_OPEN,
+            Token.Type.PAREN_CLOSE, Token.Type.BRACKET_OPEN, Token.Type.BRACKET_CLOSE, Token.Type.COLON,
+            Token.Type.BOOL, Token.Type.BOOL, Token.Type.PLUS, Token.Type.MINUS, Token.Type.MULTIPLY,
+            Token.Type.DIVIDE, Token.Type.EQUALS, Token.Type.LESS_THAN, Token.Type.GREATER_THAN, Token.Type.AND,
+            Token.Type.OR, Token.Type.NOT, Token.Type.IF, Token.Type.LET, Token.Type.APP, Token.Type.FUN,
+            Token.Type.ARROW, Token.Type.BEGIN, Token.Type.SET, Token.Type.OBJECT, Token.Type.FIELD,
+    };
+
+    // transitions[state * ALPHABET + c] for ASCII input, accepting[state] is the token the state accepts (or null)
+    private static final int[] transitions;
+    private static final Token.Type[] accepting;
+    // whether a state only consumed letters so far, so any further (non-ASCII) letter continues an identifier
+    private static final boolean[] letterRun;
+
+    static {
+        List<int[]> rows = new ArrayList<>();
+        List<Token.Type> accepts = new ArrayList<>();
+        List<Boolean> letters = new ArrayList<>();
+
+        addState(rows, accepts, letters, null, false); // START
+        addState(rows, accepts, letters, Token.Type.IDENTIFIER, true); // IDENTIFIER
+        addState(rows, accepts, letters, Token.Type.NUMBER, false); // NUMBER
+
+        for (char c = '0'; c <= '9'; c++) {
+            rows.get(START)[c] = NUMBER;
+            rows.get(NUMBER)[c] = NUMBER;
         }
-        return s.length();
-    }
-
-    private static int typeNum(String s) {
-        return parseLiteral(s, "num");
-    }
-
-    private static int typeBool(String s) {
-        return parseLiteral(s, "bool");
-    }
-
-    private static int typeVoid(String s) {
-        return parseLiteral(s, "void");
-    }
-
-    private static int parenOpen(String s) {
-        return parseLiteral(s, "(");
-    }
-
-    private static int parenClosed(String s) {
-        return parseLiteral(s, ")");
-    }
-
-    private static int bracketOpen(String s) {
-        return parseLiteral(s, "[");
-    }
-
-    private static int bracketClosed(String s) {
-        return parseLiteral(s, "]");
-    }
-
-    private static int colon(String s) {
-        return parseLiteral(s, ":");
-    }
-
-    private static int number(String s) {
-        for (int i = 0; i < s.length(); i++) {
-            String sub = s.substring(0, i + 1);
-            try {
-                Integer.parseInt(sub);
-            } catch (NumberFormatException e) {
-                return i;
+        fillLetters(rows.get(START));
+        fillLetters(rows.get(IDENTIFIER));
+
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            String keyword = KEYWORDS[k];
+            int state = START;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                int next = rows.get(state)[c];
+                if (next == REJECT || next == IDENTIFIER || next == NUMBER) {
+                    boolean prefixIsLetters = letters.get(state) || state == START;
+                    boolean stillLetters = prefixIsLetters && isLetter(c);
+                    next = addState(rows, accepts, letters, stillLetters ? Token.Type.IDENTIFIER : null, stillLetters);
+                    if (stillLetters) fillLetters(rows.get(next));
+                    rows.get(state)[c] = next;
+                }
+                state = next;
             }
+            accepts.set(state, KEYWORD_TYPES[k]);
         }
-        return s.length();
-    }
-
-    private static int bool(String s) {
-        int t = parseLiteral(s, "#true");
-        int f = parseLiteral(s, "#false");
-        return Math.max(t, f);
-    }
-
-    private static int plus(String s) {
-        return parseLiteral(s, "+");
-    }
 
-    private static int minus(String s) {
-        return parseLiteral(s, "-");
-    }
-
-    private static int multiply(String s) {
-        return parseLiteral(s, "*");
-    }
-
-    private static int divide(String s) {
-        return parseLiteral(s, "/");
-    }
-
-    private static int equals(String s) {
-        return parseLiteral(s, "=");
-    }
-
-    private static int lessThan(String s) {
-        return parseLiteral(s, "<");
-    }
-
-    private static int greaterThan(String s) {
-        return parseLiteral(s, ">");
-    }
-
-    private static int and(String s) {
-        return parseLiteral(s, "and");
-    }
-
-    private static int or(String s) {
-        return parseLiteral(s, "or");
-    }
-
-    private static int not(String s) {
-        return parseLiteral(s, "not");
-    }
-
-    private static int ifX(String s) {
-        return parseLiteral(s, "if");
-    }
-
-    private static int let(String s) {
-        return parseLiteral(s, "let");
-    }
-
-    private static int app(String s) {
-        return parseLiteral(s, "app");
-    }
-
-    private static int fun(String s) {
-        return parseLiteral(s, "fun");
+        transitions = new int[rows.size() * ALPHABET];
+        accepting = new Token.Type[rows.size()];
+        letterRun = new boolean[rows.size()];
+        for (int s = 0; s < rows.size(); s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * ALPHABET, ALPHABET);
+            accepting[s] = accepts.get(s);
+            letterRun[s] = letters.get(s);
+        }
     }
 
-    private static int arrow(String s) {
-        return parseLiteral(s, "->");
+    /**
+     * Returns the state reached from the given state on the given code point, or REJECT if the automaton is stuck.
+     */
+    public static int next(int state, int c) {
+        if (c < ALPHABET) return transitions[state * ALPHABET + c];
+        return (state == START || letterRun[state]) && Character.isAlphabetic(c) ? IDENTIFIER : REJECT;
     }
 
-    private static int begin(String s) {
-        return parseLiteral(s, "begin");
+    /**
+     * Returns the token accepted in the given state, or null if the state is not accepting.
+     */
+    public static Token.Type accept(int state) {
+        return accepting[state];
     }
 
-    private static int set(String s) {
-        return parseLiteral(s, "set!");
+    public static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
     }
 
-    private static int object(String s) {
-        return parseLiteral(s, "object");
+    private static int addState(List<int[]> rows, List<Token.Type> accepts, List<Boolean> letters,
+                                Token.Type accept, boolean letterRun) {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, REJECT);
+        rows.add(row);
+        accepts.add(accept);
+        letters.add(letterRun);
+        return rows.size() - 1;
     }
 
-    private static int field(String s) {
-        return parseLiteral(s, "field");
+    private static void fillLetters(int[] row) {
+        for (char c = 0; c < ALPHABET; c++) {
+            if (isLetter(c)) row[c] = IDENTIFIER;
+        }
     }
 
-    private static int parseLiteral(String input, String literal) {
-        return input.startsWith(literal) ? literal.length() : 0;
+    private static boolean isLetter(char c) {
+        return Character.isAlphabetic(c);
     }
 }
@@ -0,0 +1,93 @@
+package parser;
+
+import expression.*;
+import type.Primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the tree as Expression objects; a node is its position in the list of nodes built so far.
+ */
+class ExpressionBuilder implements TreeBuilder {
+
+    private final List<Expression> nodes = new ArrayList<>();
+
+    Expression get(int node) {
+        return nodes.get(node);
+    }
+
+    @Override
+    public int literal(Expression.Type type) {
+        return add(new LiteralExpression(type));
+    }
+
+    @Override
+    public int identifier(String name) {
+        return add(new IdentifierExpression(name));
+    }
+
+    @Override
+    public int binary(Expression.Type type, int left, int right) {
+        return add(new BinaryExpression(type, get(left), get(right)));
+    }
+
+    @Override
+    public int unary(int operand) {
+        return add(new UnaryExpression(get(operand)));
+    }
+
+    @Override
+    public int conditional(int condition, int consequent, int alternate) {
+        return add(new ConditionalExpression(get(condition), get(consequent), get(alternate)));
+    }
+
+    @Override
+    public int function(String argName, Primitive argType, int body) {
+        return add(new FunctionExpression(argName, argType, get(body)));
+    }
+
+    @Override
+    public int set(String identifier, int newValue) {
+        return add(new SetExpression(identifier, get(newValue)));
+    }
+
+    @Override
+    public int field(int object, String attribute) {
+        return add(new FieldExpression(get(object), attribute));
+    }
+
+    @Override
+    public int object(Object[] names, int[] nodes, int from, int to) {
+        return add(new ObjectExpression(values(names, nodes, from, to)));
+    }
+
+    @Override
+    public int let(Object[] names, int[] nodes, int from, int to, int body) {
+        return add(new LetExpression(values(names, nodes, from, to), get(body)));
+    }
+
+    @Override
+    public int letrec(Object[] values, int[] nodes, int from, int to, int body) {
+        List<Value> variables = new ArrayList<>();
+        List<Primitive> annotations = new ArrayList<>();
+        for (int i = from; i < to; i += 3) {
+            variables.add(new Value((String) values[i], get(nodes[i + 2])));
+            annotations.add((Primitive) values[i + 1]);
+        }
+        return add(new LetExpression(variables, annotations, get(body)));
+    }
+
+    private List<Value> values(Object[] names, int[] nodes, int from, int to) {
+        List<Value> values = new ArrayList<>();
+        for (int i = from; i < to; i += 2) {
+            values.add(new Value((String) names[i], get(nodes[i + 1])));
+        }
+        return values;
+    }
+
+    private int add(Expression e) {
+        nodes.add(e);
+        return nodes.size() - 1;
+    }
+}
@@ -0,0 +1,89 @@
+package parser;
+
+import expression.Expression;
+import expression.FlatTree;
+import type.Primitive;
+
+/**
+ * Builds the tree straight into a FlatTree, where a node already is an index.
+ */
+class FlatTreeBuilder implements TreeBuilder {
+
+    private final FlatTree tree = new FlatTree();
+
+    FlatTree getTree() {
+        return tree;
+    }
+
+    @Override
+    public int literal(Expression.Type type) {
+        return tree.add(type, 0, 0, 0);
+    }
+
+    @Override
+    public int identifier(String name) {
+        return tree.add(Expression.Type.IDENTIFIER, tree.name(name), 0, 0);
+    }
+
+    @Override
+    public int binary(Expression.Type type, int left, int right) {
+        return tree.add(type, left, right, 0);
+    }
+
+    @Override
+    public int unary(int operand) {
+        return tree.add(Expression.Type.UNARY, operand, 0, 0);
+    }
+
+    @Override
+    public int conditional(int condition, int consequent, int alternate) {
+        return tree.add(Expression.Type.CONDITIONAL, condition, consequent, alternate);
+    }
+
+    @Override
+    public int function(String argName, Primitive argType, int body) {
+        return tree.add(Expression.Type.FUNCTION, tree.name(argName), argType == null ? -1 : tree.type(argType), body);
+    }
+
+    @Override
+    public int set(String identifier, int newValue) {
+        return tree.add(Expression.Type.SET, tree.name(identifier), newValue, 0);
+    }
+
+    @Override
+    public int field(int object, String attribute) {
+        return tree.add(Expression.Type.FIELD, object, tree.name(attribute), 0);
+    }
+
+    @Override
+    public int object(Object[] names, int[] nodes, int from, int to) {
+        return tree.add(Expression.Type.OBJECT, pairs(names, nodes, from, to), (to - from) / 2, 0);
+    }
+
+    @Override
+    public int let(Object[] names, int[] nodes, int from, int to, int body) {
+        return tree.add(Expression.Type.LET, pairs(names, nodes, from, to), (to - from) / 2, body);
+    }
+
+    @Override
+    public int letrec(Object[] values, int[] nodes, int from, int to, int body) {
+        int first = -1;
+        for (int i = from; i < to; i += 3) {
+            int pair = tree.addPair(tree.name((String) values[i]), nodes[i + 2]);
+            if (first < 0) first = pair;
+        }
+        for (int i = from; i < to; i += 3) {
+            tree.addPair(values[i + 1] == null ? -1 : tree.type((Primitive) values[i + 1]), -1);
+        }
+        return tree.add(Expression.Type.LETREC, first, (to - from) / 3, body);
+    }
+
+    private int pairs(Object[] names, int[] nodes, int from, int to) {
+        int first = -1;
+        for (int i = from; i < to; i += 2) {
+            int pair = tree.addPair(tree.name((String) names[i]), nodes[i + 1]);
+            if (first < 0) first = pair;
+        }
+        return first;
+    }
+}
@@ -0,0 +1,81 @@
+package parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits an input stream into top-level forms by tracking parenthesis depth, so each form can be tokenized and
+ * parsed as soon as its closing paren arrives. Only the form currently being read is buffered.
+ */
+public class FormReader {
+
+    private final InputStream in;
+    private byte[] buffer = new byte[8192];
+    private int start;
+    private int scan;
+    private int limit;
+    private int depth;
+    private boolean inAtom;
+    private boolean eof;
+
+    public FormReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the source of the next top-level form, or null at the end of the input. Unterminated or unbalanced
+     * input is still returned so that the tokenizer and parser can reject it.
+     */
+    public ByteBuffer next() throws IOException {
+        while (true) {
+            if (scan == limit) {
+                if (eof) return start < limit ? take(limit) : null;
+                fill();
+                continue;
+            }
+
+            byte c = buffer[scan];
+            if (depth > 0) {
+                scan++;
+                if (c == '(') depth++;
+                else if (c == ')' && --depth == 0) return take(scan);
+            } else if (inAtom && (Automata.isWhitespace(c) || c == '(' || c == ')')) {
+                inAtom = false;
+                return take(scan);
+            } else if (Automata.isWhitespace(c)) {
+                start = ++scan;
+            } else if (c == '(' || c == ')') {
+                scan++;
+                if (c == ')') return take(scan);
+                depth = 1;
+            } else {
+                inAtom = true;
+                scan++;
+            }
+        }
+    }
+
+    private ByteBuffer take(int end) {
+        ByteBuffer form = ByteBuffer.wrap(Arrays.copyOfRange(buffer, start, end));
+        start = end;
+        return form;
+    }
+
+    private void fill() throws IOException {
+        // keep only the form being read, growing the buffer if that form fills it
+        int pending = limit - start;
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, pending);
+            scan -= start;
+            start = 0;
+            limit = pending;
+        }
+        if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) eof = true;
+        else limit += read;
+    }
+}
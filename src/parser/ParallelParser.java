@@ -0,0 +1,160 @@
+package parser;
+
+import expression.Expression;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tokenizes and parses a large program in parallel on the common fork/join pool. A scan of the bytes for
+ * parenthesis depth finds top-level form boundaries, the same ones FormReader finds in a stream, and the source
+ * is cut at them into chunks of about equal size. Each chunk is tokenized, and then parsed, as a program of
+ * its own, and the expressions are joined in source order. No token or expression spans a top-level boundary, so
+ * the outcome is the same as tokenizing and parsing the whole source at once.
+ */
+public class ParallelParser {
+
+    // below this a chunk is not worth a task of its own
+    private static final int MIN_CHUNK = 64 * 1024;
+    // chunks per worker, so one slow chunk does not hold up the rest
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int BLOCK = 8192;
+
+    /**
+     * Tokenizes the source in chunks, returning the tokens of each chunk in order, or null if any of it does not
+     * tokenize.
+     */
+    public static List<TokenBuffer> tokenize(ByteBuffer source) {
+        int[] bounds = split(source, ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_WORKER);
+        List<ForkJoinTask<TokenBuffer>> tasks = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            ByteBuffer chunk = source.slice(bounds[i], bounds[i + 1] - bounds[i]);
+            tasks.add(ForkJoinTask.adapt(() -> Tokenizer.run(chunk)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<TokenBuffer> chunks = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<TokenBuffer> task : tasks) {
+            if (task.join() == null) return null;
+            chunks.add(task.join());
+        }
+        return chunks;
+    }
+
+    /**
+     * Parses the tokens of every chunk, returning all the expressions in order, or null if any chunk does not
+     * form valid expressions.
+     */
+    public static List<Expression> parse(List<TokenBuffer> chunks) {
+        return parse(chunks, null);
+    }
+
+    /**
+     * Parses the chunks like parse, adding the number of expression nodes built to the given count unless it is
+     * null.
+     */
+    public static List<Expression> parse(List<TokenBuffer> chunks, AtomicInteger nodes) {
+        List<ForkJoinTask<List<Expression>>> tasks = new ArrayList<>(chunks.size());
+        for (TokenBuffer tokens : chunks) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Parser parser = new Parser(tokens);
+                List<Expression> expressions = parser.parse();
+                if (nodes != null) nodes.addAndGet(parser.getNodeCount());
+                return expressions;
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<Expression> expressions = new ArrayList<>();
+        for (ForkJoinTask<List<Expression>> task : tasks) {
+            if (task.join() == null) return null;
+            expressions.addAll(task.join());
+        }
+        return expressions;
+    }
+
+    /**
+     * Returns the offsets the source is cut at, from 0 to its end, into at most the given number of chunks. A cut
+     * is only made outside every form, after whitespace or a close paren, where no token can span it. The source
+     * is divided into equal parts whose changes in depth are counted in parallel, which gives the depth at the
+     * start of each part, and then each part is scanned from its start, in parallel again, for its first cut.
+     * <p>
+     * Depth here is simply the open parens less the close parens so far. Once that goes below zero the source has
+     * a stray close paren, and then the chunk it lands in fails to parse wherever the cuts are.
+     */
+    static int[] split(ByteBuffer source, int chunks) {
+        int limit = source.limit();
+        int parts = Math.max(1, Math.min(chunks, limit / MIN_CHUNK));
+        int[] starts = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            starts[i] = (int) ((long) limit * i / parts);
+        }
+
+        List<ForkJoinTask<Integer>> changes = new ArrayList<>(parts);
+        for (int i = 0; i + 1 < parts; i++) {
+            int from = starts[i];
+            int to = starts[i + 1];
+            changes.add(ForkJoinTask.adapt(() -> depthChange(source, from, to)));
+        }
+        ForkJoinTask.invokeAll(changes);
+
+        List<ForkJoinTask<Integer>> cuts = new ArrayList<>(parts);
+        int depth = 0;
+        for (int i = 1; i < parts; i++) {
+            depth += changes.get(i - 1).join();
+            int from = starts[i];
+            int to = starts[i + 1];
+            int startDepth = depth;
+            cuts.add(ForkJoinTask.adapt(() -> firstCut(source, from, to, startDepth)));
+        }
+        ForkJoinTask.invokeAll(cuts);
+
+        int[] bounds = new int[parts + 1];
+        int count = 1;
+        for (ForkJoinTask<Integer> cut : cuts) {
+            if (cut.join() >= 0) bounds[count++] = cut.join();
+        }
+        bounds[count++] = limit;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static int depthChange(ByteBuffer source, int from, int to) {
+        // a block at a time, since a mapped buffer is slow to read a byte at a time
+        byte[] block = new byte[BLOCK];
+        int change = 0;
+        for (int base = from; base < to; base += BLOCK) {
+            int length = Math.min(BLOCK, to - base);
+            source.get(base, block, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (block[i] == '(') change++;
+                else if (block[i] == ')') change--;
+            }
+        }
+        return change;
+    }
+
+    /**
+     * Returns the first offset after from, and up to to, that the source can be cut at, or -1 if there is none.
+     */
+    private static int firstCut(ByteBuffer source, int from, int to, int depth) {
+        byte[] block = new byte[BLOCK];
+        for (int base = from; base < to; base += BLOCK) {
+            int length = Math.min(BLOCK, to - base);
+            source.get(base, block, 0, length);
+            for (int i = 0; i < length; i++) {
+                byte c = block[i];
+                if (c == '(') depth++;
+                else if (c == ')') depth--;
+                else if (!Automata.isWhitespace(c)) continue;
+
+                if (depth == 0 && c != '(' && base + i + 1 < source.limit()) return base + i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -4,274 +4,435 @@ import expression.*;
 import type.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Parses a token buffer into expressions by walking a single cursor over it. Nesting is tracked on an explicit
+ * stack of frames rather than the Java call stack, so the depth of the input is only bounded by memory. Each frame
+ * is an expression or type still waiting for some of its parts; the parts it has so far (sub-expressions, types
+ * and identifiers) sit on a shared value stack above the frame's base. Finished expressions are handed to a
+ * TreeBuilder, which decides whether they become Expression objects or rows of a FlatTree.
+ */
 public class Parser {
 
-    public static List<Expression> run(List<Token> tokens) {
-        List<Expression> expressions = new ArrayList<>();
-
-        while (!tokens.isEmpty()) {
-            try {
-                ExpressionResult result = parseExpression(tokens);
-                expressions.add(result.expression());
-                tokens = sublist(tokens, result.tokensConsumed());
-            } catch (ParseException | IndexOutOfBoundsException e) {
-                e.printStackTrace();
-                return null;
-            }
-        }
+    private static final int BINARY = 0;
+    private static final int UNARY = 1;
+    private static final int CONDITIONAL = 2;
+    private static final int FUNCTION = 3;
+    private static final int SET = 4;
+    private static final int FIELD = 5;
+    private static final int OBJECT = 6;
+    private static final int LET = 7;
+    private static final int ARROW_TYPE = 8;
+    private static final int OBJECT_TYPE = 9;
+    private static final int LETREC = 10;
+    private static final int REC_TYPE = 11;
+
+    private static final Expression.Type[] EXPRESSION_TYPES = Expression.Type.values();
+
+    private final TokenBuffer tokens;
+    private final TreeBuilder builder;
+    private int index;
+
+    private int[] frameKinds = new int[16];
+    private int[] frameBases = new int[16];
+    // the expression type of a BINARY frame, or whether a LET or LETREC frame has finished its bindings
+    private int[] frameData = new int[16];
+    private int depth;
+
+    // names and types sit in values, and sub-expressions (as built by the builder) at the same index in nodes
+    private Object[] values = new Object[16];
+    private int[] nodes = new int[16];
+    private int valueCount;
+    private int nodeCount;
+
+    private Parser(TokenBuffer tokens, TreeBuilder builder) {
+        this.tokens = tokens;
+        this.builder = builder;
+    }
 
-        return expressions;
+    public Parser(TokenBuffer tokens) {
+        this(tokens, new ExpressionBuilder());
     }
 
-    private static ExpressionResult parseExpression(List<Token> tokens) throws ParseException {
-        if (tokens.isEmpty()) return null; // this should never happen
+    public static List<Expression> run(TokenBuffer tokens) {
+        return new Parser(tokens).parse();
+    }
 
-        Token first = tokens.get(0);
+    /**
+     * Parses the token buffer into a FlatTree, or returns null if it does not form valid expressions.
+     */
+    public static FlatTree runFlat(TokenBuffer tokens) {
+        FlatTreeBuilder builder = new FlatTreeBuilder();
+        int[] roots = new Parser(tokens, builder).parseRoots();
+        if (roots == null) return null;
+        builder.getTree().setRoots(roots);
+        return builder.getTree();
+    }
 
-        // case: number, boolean, or identifier
-        if (first.getType() == Token.Type.NUMBER) {
-            return new ExpressionResult(new LiteralExpression(Expression.Type.NUMBER), 1);
-        } else if (first.getType() == Token.Type.BOOL) {
-            return new ExpressionResult(new LiteralExpression(Expression.Type.BOOLEAN), 1);
-        } else if (first.getType() == Token.Type.IDENTIFIER) {
-            return new ExpressionResult(new LiteralExpression(first.getValue()), 1);
+    /**
+     * Parses every expression in the token buffer, or returns null if they do not form valid expressions.
+     */
+    public List<Expression> parse() {
+        int[] roots = parseRoots();
+        if (roots == null) return null;
+
+        ExpressionBuilder expressions = (ExpressionBuilder) builder;
+        List<Expression> result = new ArrayList<>(roots.length);
+        for (int root : roots) {
+            result.add(expressions.get(root));
         }
-
-        matchToken(Token.Type.PAREN_OPEN, first);
-
-        Token.Type command = tokens.get(1).getType();
-        tokens = sublist(tokens, 2);
-
-        ExpressionResult result = switch(command) {
-            case PLUS, MINUS, MULTIPLY, DIVIDE -> parseBinaryExpression(tokens, Expression.Type.ARITHMETIC);
-            case EQUALS, LESS_THAN, GREATER_THAN -> parseBinaryExpression(tokens, Expression.Type.RELATIONAL);
-            case AND, OR -> parseBinaryExpression(tokens, Expression.Type.LOGICAL);
-            case NOT -> parseUnaryExpression(tokens);
-            case IF -> parseConditionalExpression(tokens);
-            case APP -> parseBinaryExpression(tokens, Expression.Type.APP);
-            case FUN -> parseFunctionExpression(tokens);
-            case BEGIN -> parseBinaryExpression(tokens, Expression.Type.BEGIN);
-            case SET -> parseSetExpression(tokens);
-            case OBJECT -> parseObjectExpression(tokens);
-            case FIELD -> parseFieldExpression(tokens);
-            case LET -> parseLetExpression(tokens);
-            default -> null;
-        };
-
-        tokens = sublist(tokens, result.tokensConsumed());
-        matchToken(Token.Type.PAREN_CLOSE, tokens.get(0));
-        return new ExpressionResult(result.expression(), 2 + result.tokensConsumed() + 1);
+        return result;
     }
 
-    private static ExpressionResult parseBinaryExpression(List<Token> tokens, Expression.Type type) throws ParseException {
-        // parse left
-        ExpressionResult leftResult = parseExpression(tokens);
-        tokens = sublist(tokens, leftResult.tokensConsumed());
+    private int[] parseRoots() {
+        int[] roots = new int[8];
+        int count = 0;
 
-        // parse right
-        ExpressionResult rightResult = parseExpression(tokens);
+        try {
+            while (index < tokens.size()) {
+                if (count == roots.length) roots = Arrays.copyOf(roots, count * 2);
+                roots[count++] = parseExpression();
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+            return null;
+        }
 
-        BinaryExpression expression = new BinaryExpression(type, leftResult.expression(), rightResult.expression());
-        return new ExpressionResult(expression, leftResult.tokensConsumed() + rightResult.tokensConsumed());
+        return Arrays.copyOf(roots, count);
     }
 
-    private static ExpressionResult parseUnaryExpression(List<Token> tokens) throws ParseException {
-        // parse operand
-        ExpressionResult operand = parseExpression(tokens);
-
-        UnaryExpression expression = new UnaryExpression(operand.expression());
-        return new ExpressionResult(expression, operand.tokensConsumed());
+    /**
+     * Returns the number of expression nodes built so far.
+     */
+    public int getNodeCount() {
+        return nodeCount;
     }
 
-    private static ExpressionResult parseConditionalExpression(List<Token> tokens) throws ParseException {
-        // parse condition
-        ExpressionResult condition = parseExpression(tokens);
-        tokens = sublist(tokens, condition.tokensConsumed());
-
-        // parse consequent
-        ExpressionResult consequent = parseExpression(tokens);
-        tokens = sublist(tokens, consequent.tokensConsumed());
+    private int parseExpression() throws ParseException {
+        while (true) {
+            Token.Type token = next();
+            if (depth > 0 && expectsType()) startType(token);
+            else startExpression(token);
 
-        // parse alternate
-        ExpressionResult alternate = parseExpression(tokens);
-
-        ConditionalExpression expression = new ConditionalExpression(condition.expression(), consequent.expression(), alternate.expression());
-        return new ExpressionResult(expression, condition.tokensConsumed() + consequent.tokensConsumed() + alternate.tokensConsumed());
+            settle();
+            if (depth == 0) return nodes[--valueCount];
+        }
     }
 
-    private static ExpressionResult parseFunctionExpression(List<Token> tokens) throws ParseException {
-        // parse characters
-        matchToken(Token.Type.PAREN_OPEN, tokens.get(0));
-        matchToken(Token.Type.IDENTIFIER, tokens.get(1));
-        String id = tokens.get(1).getValue();
-        matchToken(Token.Type.COLON, tokens.get(2));
-        tokens = sublist(tokens, 3);
-
-        // parse type
-        TypeResult type = parseType(tokens);
-        tokens = sublist(tokens, type.tokensConsumed());
-
-        matchToken(Token.Type.PAREN_CLOSE, tokens.get(0));
-        tokens = sublist(tokens, 1);
-
-        // parse body
-        ExpressionResult body = parseExpression(tokens);
+    /**
+     * Pushes the expression starting with the given token if it is an atom, or opens a frame for it otherwise.
+     */
+    private void startExpression(Token.Type first) throws ParseException {
+        // case: number, boolean, or identifier
+        if (first == Token.Type.NUMBER) {
+            pushNode(builder.literal(Expression.Type.NUMBER));
+            return;
+        } else if (first == Token.Type.BOOL) {
+            pushNode(builder.literal(Expression.Type.BOOLEAN));
+            return;
+        } else if (first == Token.Type.IDENTIFIER) {
+            pushNode(builder.identifier(tokens.text(index - 1)));
+            return;
+        }
 
-        int totalConsumed = 3 + type.tokensConsumed() + 1 + body.tokensConsumed();
-        FunctionExpression expression = new FunctionExpression(id, type.primitive(), body.expression());
-        return new ExpressionResult(expression, totalConsumed);
+        checkToken(Token.Type.PAREN_OPEN, first);
+
+        Token.Type command = next();
+        switch (command) {
+            case PLUS, MINUS, MULTIPLY, DIVIDE -> openFrame(BINARY, Expression.Type.ARITHMETIC.ordinal());
+            case EQUALS, LESS_THAN, GREATER_THAN -> openFrame(BINARY, Expression.Type.RELATIONAL.ordinal());
+            case AND, OR -> openFrame(BINARY, Expression.Type.LOGICAL.ordinal());
+            case APP -> openFrame(BINARY, Expression.Type.APP.ordinal());
+            case BEGIN -> openFrame(BINARY, Expression.Type.BEGIN.ordinal());
+            case NOT -> openFrame(UNARY, 0);
+            case IF -> openFrame(CONDITIONAL, 0);
+            case FUN -> {
+                openFrame(FUNCTION, 0);
+                matchToken(Token.Type.PAREN_OPEN);
+                push(matchIdentifier());
+                // without an annotation the argument type is left to be inferred, which a null type stands for
+                if (peek() == Token.Type.PAREN_CLOSE) push(null);
+                else matchToken(Token.Type.COLON);
+            }
+            case SET -> {
+                openFrame(SET, 0);
+                push(matchIdentifier());
+            }
+            case FIELD -> openFrame(FIELD, 0);
+            case OBJECT -> openFrame(OBJECT, 0);
+            case LET -> {
+                openFrame(LET, 0);
+                matchToken(Token.Type.PAREN_OPEN);
+            }
+            // letrec is only a keyword at the head of a form, where no name could be before, so it is still a name
+            case IDENTIFIER -> {
+                if (!tokens.text(index - 1).equals("letrec")) throw new ParseException("Unexpected token " + command);
+                openFrame(LETREC, 0);
+                matchToken(Token.Type.PAREN_OPEN);
+            }
+            default -> throw new ParseException("Unexpected token " + command);
+        }
     }
 
-    private static ExpressionResult parseSetExpression(List<Token> tokens) throws ParseException {
-        // parse identifier
-        matchToken(Token.Type.IDENTIFIER, tokens.get(0));
-        String id = tokens.get(0).getValue();
-        tokens = sublist(tokens, 1);
-
-        // parse expression
-        ExpressionResult expression = parseExpression(tokens);
+    /**
+     * Pushes the type starting with the given token if it is a primitive, or opens a frame for it otherwise.
+     */
+    private void startType(Token.Type first) throws ParseException {
+        if (first == Token.Type.TYPE_NUM || first == Token.Type.TYPE_BOOL || first == Token.Type.TYPE_VOID) {
+            push(convertTokenToPrimitive(first));
+            return;
+        } else if (first == Token.Type.IDENTIFIER) {
+            push(RecursiveReference.of(binderIndex(tokens.text(index - 1))));
+            return;
+        }
 
-        SetExpression setExpression = new SetExpression(id, expression.expression());
-        return new ExpressionResult(setExpression, 1 + expression.tokensConsumed());
+        checkToken(Token.Type.PAREN_OPEN, first);
+
+        Token.Type command = next();
+        switch (command) {
+            case ARROW -> openFrame(ARROW_TYPE, 0);
+            case OBJECT -> openFrame(OBJECT_TYPE, 0);
+            // and so is rec, at the head of a type
+            case IDENTIFIER -> {
+                if (!tokens.text(index - 1).equals("rec")) throw new ParseException("Unexpected token " + command);
+                openFrame(REC_TYPE, 0);
+                push(matchIdentifier());
+            }
+            default -> throw new ParseException("Unexpected token " + command);
+        }
     }
 
-    private static ExpressionResult parseObjectExpression(List<Token> tokens) throws ParseException {
-        // parse list of values
-        ParseValueListResult result = parseValueList(tokens);
-
-        return new ExpressionResult(new ObjectExpression(result.values()), result.tokensConsumed());
+    /**
+     * Returns how many recursive types being parsed are inside the innermost one that names its variable so.
+     */
+    private int binderIndex(String name) throws ParseException {
+        int index = 0;
+        for (int frame = depth - 1; frame >= 0; frame--) {
+            if (frameKinds[frame] != REC_TYPE) continue;
+            if (values[frameBases[frame]].equals(name)) return index;
+            index++;
+        }
+        throw new ParseException("Unbound type variable " + name);
     }
 
-    private static ExpressionResult parseFieldExpression(List<Token> tokens) throws ParseException {
-        // parse object expression
-        ExpressionResult expression = parseExpression(tokens);
-        tokens = sublist(tokens, expression.tokensConsumed());
-
-        // parse identifier
-        matchToken(Token.Type.IDENTIFIER, tokens.get(0));
-        String id = tokens.get(0).getValue();
+    /**
+     * Consumes the fixed tokens the innermost frames expect next, closing every frame that has all of its parts,
+     * until the innermost frame needs another sub-expression or type (or the stack is empty).
+     */
+    private void settle() throws ParseException {
+        while (depth > 0) {
+            int frame = depth - 1;
+            int base = frameBases[frame];
+            int parts = valueCount - base;
+
+            // a finished expression, or a finished type (then node is unused)
+            int node = -1;
+            Primitive type = null;
+            switch (frameKinds[frame]) {
+                case BINARY -> {
+                    if (parts < 2) return;
+                    node = builder.binary(EXPRESSION_TYPES[frameData[frame]], nodes[base], nodes[base + 1]);
+                }
+                case UNARY -> {
+                    if (parts < 1) return;
+                    node = builder.unary(nodes[base]);
+                }
+                case CONDITIONAL -> {
+                    if (parts < 3) return;
+                    node = builder.conditional(nodes[base], nodes[base + 1], nodes[base + 2]);
+                }
+                case FUNCTION -> {
+                    // the name and the argument type, then the closing paren of the argument and the body
+                    if (parts < 2) return;
+                    if (parts == 2) {
+                        matchToken(Token.Type.PAREN_CLOSE);
+                        return;
+                    }
+                    node = builder.function((String) values[base], (Primitive) values[base + 1], nodes[base + 2]);
+                }
+                case SET -> {
+                    if (parts < 2) return;
+                    node = builder.set((String) values[base], nodes[base + 1]);
+                }
+                case FIELD -> {
+                    if (parts < 1) return;
+                    node = builder.field(nodes[base], matchIdentifier());
+                }
+                case OBJECT -> {
+                    if (!settleBindings(parts)) return;
+                    node = builder.object(values, nodes, base, valueCount);
+                }
+                case LET -> {
+                    if (frameData[frame] == 0) {
+                        if (!settleBindings(parts)) return;
+                        matchToken(Token.Type.PAREN_CLOSE);
+                        frameData[frame] = 1;
+                        return;
+                    }
+                    if (parts % 2 == 0) return;
+                    node = builder.let(values, nodes, base, valueCount - 1, nodes[valueCount - 1]);
+                }
+                case LETREC -> {
+                    if (frameData[frame] == 0) {
+                        if (!settleAnnotatedBindings(parts)) return;
+                        matchToken(Token.Type.PAREN_CLOSE);
+                        frameData[frame] = 1;
+                        return;
+                    }
+                    if (parts % 3 == 0) return;
+                    node = builder.letrec(values, nodes, base, valueCount - 1, nodes[valueCount - 1]);
+                }
+                case ARROW_TYPE -> {
+                    if (parts < 2) return;
+                    type = ArrowType.of((Primitive) values[base], (Primitive) values[base + 1]);
+                }
+                case OBJECT_TYPE -> {
+                    if (!settleBindings(parts)) return;
+                    List<Attribute> attributes = new ArrayList<>();
+                    for (int i = base; i < valueCount; i += 2) {
+                        attributes.add(new Attribute((String) values[i], (Primitive) values[i + 1]));
+                    }
+                    type = ObjectType.of(attributes);
+                }
+                case REC_TYPE -> {
+                    if (parts < 2) return;
+                    Primitive body = (Primitive) values[base + 1];
+                    if (!RecursiveType.isContractive(body)) {
+                        throw new ParseException(body.getType() + " cannot be recursive");
+                    }
+                    type = RecursiveType.of(body);
+                }
+                default -> throw new IllegalStateException();
+            }
 
-        FieldExpression fieldExpression = new FieldExpression(expression.expression(), id);
-        return new ExpressionResult(fieldExpression, expression.tokensConsumed() + 1);
+            matchToken(Token.Type.PAREN_CLOSE);
+            closeFrame();
+            if (type != null) {
+                push(type);
+            } else {
+                pushNode(node);
+            }
+        }
     }
 
-    private static ExpressionResult parseLetExpression(List<Token> tokens) throws ParseException {
-        matchToken(Token.Type.PAREN_OPEN, tokens.get(0));
-        tokens = sublist(tokens, 1);
-
-        // parse list of values
-        ParseValueListResult result = parseValueList(tokens);
-        tokens = sublist(tokens, result.tokensConsumed());
-
-        matchToken(Token.Type.PAREN_CLOSE, tokens.get(0));
-        tokens = sublist(tokens, 1);
-
-        // parse body expression
-        ExpressionResult expressionResult = parseExpression(tokens);
-
-        LetExpression letExpression = new LetExpression(result.values(), expressionResult.expression());
-        int totalConsumed = 1 + result.tokensConsumed() + 1 + expressionResult.tokensConsumed();
-        return new ExpressionResult(letExpression, totalConsumed);
+    /**
+     * Steps through a list of [id value] bindings: closes the previous binding, then opens the next one unless the
+     * list ends here. Returns true at the end of the list, leaving its closing paren to the caller.
+     */
+    private boolean settleBindings(int parts) throws ParseException {
+        if (parts % 2 == 1) return false;
+        if (parts > 0) matchToken(Token.Type.BRACKET_CLOSE);
+        if (peek() == Token.Type.PAREN_CLOSE) return true;
+        matchToken(Token.Type.BRACKET_OPEN);
+        push(matchIdentifier());
+        return false;
     }
 
-    private static void matchToken(Token.Type expected, Token token) throws ParseException {
-        if (token.getType() != expected) throw new ParseException("Type mismatch: expected " + expected + " but got " + token.getType());
+    /**
+     * Steps through a list of [id : type value] bindings as settleBindings does, where the type is optional and
+     * null stands for one left out, and the value must be a fun.
+     */
+    private boolean settleAnnotatedBindings(int parts) throws ParseException {
+        if (parts % 3 == 2) expectFunction();
+        if (parts % 3 != 0) return false;
+        if (parts > 0) matchToken(Token.Type.BRACKET_CLOSE);
+        if (peek() == Token.Type.PAREN_CLOSE) return true;
+        matchToken(Token.Type.BRACKET_OPEN);
+        push(matchIdentifier());
+        if (peek() == Token.Type.COLON) {
+            next();
+        } else {
+            push(null);
+            expectFunction();
+        }
+        return false;
     }
 
-    private static TypeResult parseType(List<Token> tokens) throws ParseException {
-        // similar to parse expression
-        if (tokens.isEmpty()) return null;
-
-        Token first = tokens.get(0);
-
-        if (first.getType() == Token.Type.TYPE_NUM || first.getType() == Token.Type.TYPE_BOOL || first.getType() == Token.Type.TYPE_VOID) {
-            return new TypeResult(new TruePrimitive(convertTokenToPrimitive(first.getType())), 1);
+    private void expectFunction() throws ParseException {
+        if (peek() != Token.Type.PAREN_OPEN || index + 1 >= tokens.size()
+                || tokens.type(index + 1) != Token.Type.FUN) {
+            throw new ParseException("letrec can only bind funs");
         }
+    }
 
-        matchToken(Token.Type.PAREN_OPEN, first);
-
-        tokens = sublist(tokens, 1);
-        TypeResult result = switch (tokens.get(0).getType()) {
-            case ARROW -> parseArrowType(sublist(tokens, 1));
-            case OBJECT -> parseObjectType(sublist(tokens, 1));
-            default -> null;
+    private boolean expectsType() {
+        int frame = depth - 1;
+        int parts = valueCount - frameBases[frame];
+        return switch (frameKinds[frame]) {
+            case FUNCTION -> parts == 1;
+            case ARROW_TYPE, REC_TYPE -> true;
+            case OBJECT_TYPE -> parts % 2 == 1;
+            case LETREC -> frameData[frame] == 0 && parts % 3 == 1;
+            default -> false;
         };
+    }
+
+    private void openFrame(int kind, int data) {
+        if (depth == frameKinds.length) {
+            frameKinds = Arrays.copyOf(frameKinds, depth * 2);
+            frameBases = Arrays.copyOf(frameBases, depth * 2);
+            frameData = Arrays.copyOf(frameData, depth * 2);
+        }
+        frameKinds[depth] = kind;
+        frameBases[depth] = valueCount;
+        frameData[depth] = data;
+        depth++;
+    }
 
-        tokens = sublist(tokens, result.tokensConsumed());
-        matchToken(Token.Type.PAREN_CLOSE, tokens.get(0));
-        return new TypeResult(result.primitive(), 2 + result.tokensConsumed() + 1);
+    private void closeFrame() {
+        depth--;
+        int base = frameBases[depth];
+        Arrays.fill(values, base, valueCount, null);
+        valueCount = base;
     }
 
-    private static TypeResult parseArrowType(List<Token> tokens) throws ParseException {
-        // parse argument
-        TypeResult argument = parseType(tokens);
-        tokens = sublist(tokens, argument.tokensConsumed());
+    private void push(Object value) {
+        if (valueCount == values.length) grow();
+        values[valueCount++] = value;
+    }
 
-        // parse result
-        TypeResult result = parseType(tokens);
+    private void pushNode(int node) {
+        nodeCount++;
+        if (valueCount == values.length) grow();
+        nodes[valueCount++] = node;
+    }
 
-        ArrowType type = new ArrowType(argument.primitive(), result.primitive());
-        return new TypeResult(type, argument.tokensConsumed() + result.tokensConsumed());
+    private void grow() {
+        values = Arrays.copyOf(values, valueCount * 2);
+        nodes = Arrays.copyOf(nodes, valueCount * 2);
     }
 
-    private static TypeResult parseObjectType(List<Token> tokens) throws ParseException {
-        List<Attribute> attributes = new ArrayList<>();
-        int totalConsumed = 0;
-        while (tokens.get(0).getType() != Token.Type.PAREN_CLOSE) {
-            matchToken(Token.Type.BRACKET_OPEN, tokens.get(0));
-            matchToken(Token.Type.IDENTIFIER, tokens.get(1));
-            String id = tokens.get(1).getValue();
-            tokens = sublist(tokens, 2);
-
-            TypeResult typeResult = parseType(tokens);
-            int tempConsumed = 2 + typeResult.tokensConsumed();
-            tokens = sublist(tokens, tempConsumed);
-
-            matchToken(Token.Type.BRACKET_CLOSE, tokens.get(0));
-            tempConsumed++;
-            tokens = sublist(tokens, 1);
-            totalConsumed += tempConsumed;
-            attributes.add(new Attribute(id, typeResult.primitive()));
-        }
+    private Token.Type next() throws ParseException {
+        Token.Type type = peek();
+        index++;
+        return type;
+    }
 
-        return new TypeResult(new ObjectType(attributes), totalConsumed);
+    private Token.Type peek() throws ParseException {
+        if (index >= tokens.size()) throw new ParseException("Ran out of tokens");
+        return tokens.type(index);
     }
 
-    private static ParseValueListResult parseValueList(List<Token> tokens) throws ParseException {
-        List<Value> variables = new ArrayList<>();
-        int totalConsumed = 0;
-        while (tokens.get(0).getType() != Token.Type.PAREN_CLOSE) {
-            matchToken(Token.Type.BRACKET_OPEN, tokens.get(0));
-            matchToken(Token.Type.IDENTIFIER, tokens.get(1));
-            String id = tokens.get(1).getValue();
-            tokens = sublist(tokens, 2);
-
-            ExpressionResult expressionResult = parseExpression(tokens);
-            int tempConsumed = 2 + expressionResult.tokensConsumed();
-            tokens = sublist(tokens, expressionResult.tokensConsumed());
-
-            matchToken(Token.Type.BRACKET_CLOSE, tokens.get(0));
-            tempConsumed++;
-            tokens = sublist(tokens, 1);
-            totalConsumed += tempConsumed;
-            variables.add(new Value(id, expressionResult.expression()));
-        }
+    private void matchToken(Token.Type expected) throws ParseException {
+        checkToken(expected, next());
+    }
 
-        return new ParseValueListResult(variables, totalConsumed);
+    private String matchIdentifier() throws ParseException {
+        matchToken(Token.Type.IDENTIFIER);
+        return tokens.text(index - 1);
     }
 
-    private static List<Token> sublist(List<Token> tokens, int index) throws ParseException {
-        if (index > tokens.size()) throw new ParseException("Ran out of tokens");
-        return tokens.subList(index, tokens.size());
+    private static void checkToken(Token.Type expected, Token.Type actual) throws ParseException {
+        if (actual != expected) throw new ParseException("Type mismatch: expected " + expected + " but got " + actual);
     }
 
-    private static Primitive.Type convertTokenToPrimitive(Token.Type type) {
+    private static Primitive convertTokenToPrimitive(Token.Type type) {
         return switch (type) {
-            case TYPE_NUM -> Primitive.Type.NUMBER;
-            case TYPE_BOOL -> Primitive.Type.BOOLEAN;
-            case TYPE_VOID -> Primitive.Type.VOID;
+            case TYPE_NUM -> TruePrimitive.NUMBER;
+            case TYPE_BOOL -> TruePrimitive.BOOLEAN;
+            case TYPE_VOID -> TruePrimitive.VOID;
             default -> null;
         };
     }
@@ -34,25 +34,4 @@ public class Token {
         OBJECT,
         FIELD,
     }
-
-    private final Type type;
-    private final String value;
-
-    public Token(Type type) {
-        this.type = type;
-        this.value = null;
-    }
-
-    public Token(String value) {
-        this.type = Type.IDENTIFIER;
-        this.value = value;
-    }
-
-    public Type getType() {
-        return type;
-    }
-
-    public String getValue() {
-        return value;
-    }
 }
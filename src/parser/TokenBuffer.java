@@ -0,0 +1,67 @@
+package parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact token stream: parallel arrays holding each token's type and its start/end offsets into the source
+ * bytes. Identifier text is only decoded when asked for.
+ */
+public class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final ByteBuffer source;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    public TokenBuffer(ByteBuffer source) {
+        this.source = source;
+        int capacity = Math.max(16, source.limit() / 4);
+        this.types = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+    }
+
+    void add(Token.Type type, int start, int end) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    public String text(int index) {
+        byte[] bytes = new byte[ends[index] - starts[index]];
+        source.get(starts[index], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public ByteBuffer getSource() {
+        return source;
+    }
+}
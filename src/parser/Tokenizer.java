@@ -1,44 +1,80 @@
 package parser;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.function.Function;
+import java.nio.ByteBuffer;
 
 public class Tokenizer {
 
-    public static List<Token> run(List<String> inputs) {
-        List<Token> tokens = new ArrayList<>();
+    public static TokenBuffer run(ByteBuffer source) {
+        TokenBuffer tokens = new TokenBuffer(source);
+        int limit = source.limit();
 
-        for (String s : inputs) {
-            while (!s.equals("")) {
-                char c = s.charAt(0);
-                if (c == ' ' || c == '\n' || c == '\t') {
-                    s = s.substring(1);
-                    continue;
-                }
+        int position = 0;
+        while (position < limit) {
+            if (Automata.isWhitespace(source.get(position))) {
+                position++;
+                continue;
+            }
 
-                int maxCharsRead = 0;
-                Token.Type maxToken = null;
-                SortedMap<Token.Type, Function<String, Integer>> automata = Automata.getAutomata();
-                for (Map.Entry<Token.Type, Function<String, Integer>> automaton : automata.entrySet()) {
-                    int charsRead = automaton.getValue().apply(s);
-                    if (charsRead >= maxCharsRead) {
-                        maxCharsRead = charsRead;
-                        maxToken = automaton.getKey();
-                    }
+            // walk the automaton as far as it goes, remembering the last accepting state
+            int state = Automata.START;
+            int end = position;
+            int matchEnd = position;
+            Token.Type match = null;
+            while (end < limit) {
+                int c = source.get(end) & 0xFF;
+                int width = 1;
+                if (c >= 0x80) {
+                    width = utf8Width(c);
+                    c = decodeUtf8(source, end, width, limit);
+                    if (c < 0) break;
                 }
 
-                if (maxCharsRead != 0) {
-                    tokens.add(maxToken == Token.Type.IDENTIFIER ?
-                            new Token(s.substring(0, maxCharsRead)) : new Token(maxToken));
-                } else return null;
-                s = s.substring(maxCharsRead);
+                state = Automata.next(state, c);
+                if (state == Automata.REJECT) break;
+                end += width;
+                Token.Type accepted = Automata.accept(state);
+                if (accepted != null) {
+                    match = accepted;
+                    matchEnd = end;
+                }
             }
+
+            if (match == null) return null;
+            if (match == Token.Type.NUMBER && matchEnd - position > 9) matchEnd = intPrefixEnd(source, position, matchEnd);
+            tokens.add(match, position, matchEnd);
+            position = matchEnd;
         }
 
         return tokens;
     }
-}
 
+    /**
+     * Returns where the longest prefix of the given digit run that fits in an int ends. A number has always been
+     * lexed only up to the int range, so 2147483648 is the two numbers 214748364 and 8.
+     */
+    private static int intPrefixEnd(ByteBuffer source, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (source.get(i) - '0');
+            if (value > Integer.MAX_VALUE) return i;
+        }
+        return end;
+    }
+
+    private static int utf8Width(int lead) {
+        if (lead >= 0xF0) return 4;
+        if (lead >= 0xE0) return 3;
+        return 2;
+    }
+
+    private static int decodeUtf8(ByteBuffer source, int index, int width, int limit) {
+        if ((source.get(index) & 0xC0) != 0xC0 || index + width > limit) return -1;
+        int codePoint = source.get(index) & (0x7F >> width);
+        for (int i = 1; i < width; i++) {
+            int b = source.get(index + i) & 0xFF;
+            if ((b & 0xC0) != 0x80) return -1;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        return codePoint;
+    }
+}
@@ -0,0 +1,36 @@
+package parser;
+
+import expression.Expression;
+import type.Primitive;
+
+/**
+ * Receives the nodes the parser recognizes, children before parents, and builds them into some representation of
+ * the tree. Each node is referred to by the int the builder returned for it. The bindings of a let or object are
+ * passed as the parser holds them: names at the even offsets of names and their value nodes at the odd offsets of
+ * nodes, from one index up to another. Those of a letrec come in threes instead: the name and the annotated type
+ * (null to infer it) in values, then the value node in nodes.
+ */
+interface TreeBuilder {
+
+    int literal(Expression.Type type);
+
+    int identifier(String name);
+
+    int binary(Expression.Type type, int left, int right);
+
+    int unary(int operand);
+
+    int conditional(int condition, int consequent, int alternate);
+
+    int function(String argName, Primitive argType, int body);
+
+    int set(String identifier, int newValue);
+
+    int field(int object, String attribute);
+
+    int object(Object[] names, int[] nodes, int from, int to);
+
+    int let(Object[] names, int[] nodes, int from, int to, int body);
+
+    int letrec(Object[] values, int[] nodes, int from, int to, int body);
+}
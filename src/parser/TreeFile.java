@@ -0,0 +1,448 @@
+package parser;
+
+import expression.Expression;
+import expression.FlatTree;
+import type.ArrowType;
+import type.Attribute;
+import type.ObjectType;
+import type.Primitive;
+import type.RecursiveReference;
+import type.RecursiveType;
+import type.TruePrimitive;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed program saved in binary, so a program that is checked again and again unchanged is read back without
+ * being tokenized or parsed. The file holds a FlatTree much as it is in memory, little-endian:
+ * <pre>
+ * header   magic (4 bytes), version, and the number of nodes, pairs, names, types and roots
+ * names    the length of each in bytes, and its UTF-8 bytes
+ * types    the kind of each (a byte), then the argument and result of an arrow, the number of attributes of
+ *          an object and the name and type of each, the body of a recursive type, or the index of a reference
+ * nodes    the kinds of all of them (bytes), then all their first, all their second and all their third operands
+ * pairs    the name and node of each
+ * roots
+ * </pre>
+ * Everything refers to names, types and nodes by their position in their table, and a type or node only refers to
+ * ones before it. The arrays are copied out of the file in bulk, so reading a memory-mapped file costs little
+ * more than a copy and a pass to make sure it holds a well-formed tree.
+ */
+public final class TreeFile {
+
+    public static final int VERSION = 2;
+
+    // the first byte is not ASCII, so no source text starts like a saved tree
+    private static final byte[] MAGIC = {(byte) 0x89, 'A', 'S', 'T'};
+    private static final int HEADER = MAGIC.length + 6 * Integer.BYTES;
+
+    private static final Expression.Type[] KINDS = Expression.Type.values();
+    private static final Primitive.Type[] TYPE_KINDS = Primitive.Type.values();
+
+    private TreeFile() {
+    }
+
+    /**
+     * Returns whether the bytes from the position of the buffer on start like a saved tree.
+     */
+    public static boolean matches(ByteBuffer source) {
+        if (source.remaining() < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (source.get(source.position() + i) != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    public static void write(FlatTree tree, Path path) throws IOException {
+        ByteBuffer buffer = encode(tree);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static ByteBuffer encode(FlatTree tree) {
+        // the tree's own tables only have what its nodes mention, so the types annotations are made of and the
+        // names of their attributes are added after that
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> nameIds = new HashMap<>();
+        for (int i = 0; i < tree.nameCount(); i++) {
+            nameIds.put(tree.nameOf(i), i);
+            names.add(tree.nameOf(i));
+        }
+        List<Primitive> types = new ArrayList<>();
+        Map<Primitive, Integer> typeIds = new IdentityHashMap<>();
+        for (int i = 0; i < tree.typeCount(); i++) {
+            register(tree.typeOf(i), types, typeIds, names, nameIds);
+        }
+
+        List<byte[]> encodedNames = new ArrayList<>(names.size());
+        int size = HEADER;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encodedNames.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+        for (Primitive type : types) {
+            size += 1 + switch (type.getType()) {
+                case ARROW -> 2 * Integer.BYTES;
+                case OBJECT -> Integer.BYTES + 2 * Integer.BYTES * ((ObjectType) type).getAttributes().size();
+                case RECURSIVE, REFERENCE -> Integer.BYTES;
+                default -> 0;
+            };
+        }
+        int[] roots = tree.getRoots();
+        size += tree.size() * (1 + 3 * Integer.BYTES) + tree.pairCount() * 2 * Integer.BYTES + roots.length * Integer.BYTES;
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putInt(tree.size()).putInt(tree.pairCount()).putInt(names.size())
+                .putInt(types.size()).putInt(roots.length);
+        for (byte[] name : encodedNames) {
+            out.putInt(name.length).put(name);
+        }
+        for (Primitive type : types) {
+            out.put((byte) type.getType().ordinal());
+            if (type instanceof ArrowType arrow) {
+                out.putInt(typeIds.get(arrow.getArgument())).putInt(typeIds.get(arrow.getResult()));
+            } else if (type instanceof ObjectType object) {
+                out.putInt(object.getAttributes().size());
+                for (Attribute a : object.getAttributes()) {
+                    out.putInt(nameIds.get(a.identifier())).putInt(typeIds.get(a.type()));
+                }
+            } else if (type instanceof RecursiveType recursive) {
+                out.putInt(typeIds.get(recursive.getBody()));
+            } else if (type instanceof RecursiveReference reference) {
+                out.putInt(reference.getIndex());
+            }
+        }
+
+        for (int node = 0; node < tree.size(); node++) {
+            out.put((byte) tree.kind(node).ordinal());
+        }
+        for (int node = 0; node < tree.size(); node++) {
+            out.putInt(tree.first(node));
+        }
+        for (int node = 0; node < tree.size(); node++) {
+            // the annotation of a function moves from the tree's type table to the file's
+            boolean annotation = tree.kind(node) == Expression.Type.FUNCTION && tree.second(node) >= 0;
+            out.putInt(annotation ? typeIds.get(tree.typeOf(tree.second(node))) : tree.second(node));
+        }
+        for (int node = 0; node < tree.size(); node++) {
+            out.putInt(tree.third(node));
+        }
+        // so are the annotations of letrec variables, which the pairs after a letrec's own hold
+        boolean[] annotations = new boolean[tree.pairCount()];
+        for (int node = 0; node < tree.size(); node++) {
+            if (tree.kind(node) != Expression.Type.LETREC) continue;
+            for (int i = 0; i < tree.second(node); i++) {
+                annotations[tree.first(node) + tree.second(node) + i] = true;
+            }
+        }
+        for (int pair = 0; pair < tree.pairCount(); pair++) {
+            int name = tree.pairName(pair);
+            if (annotations[pair] && name >= 0) name = typeIds.get(tree.typeOf(name));
+            out.putInt(name).putInt(tree.pairNode(pair));
+        }
+        for (int root : roots) {
+            out.putInt(root);
+        }
+        return out.flip();
+    }
+
+    /**
+     * Reads a saved tree from the position of the buffer on, or returns null if it is not a well-formed tree of
+     * this version or an earlier one. Version 2 only added records, recursive types and letrec nodes, so a tree of
+     * version 1 reads the same way as long as it has none of them.
+     */
+    public static FlatTree read(ByteBuffer file) {
+        ByteBuffer in = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (!matches(in)) return null;
+        in.position(in.position() + MAGIC.length);
+
+        try {
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) return null;
+            int nodeCount = in.getInt();
+            int pairCount = in.getInt();
+            int nameCount = in.getInt();
+            int typeCount = in.getInt();
+            int rootCount = in.getInt();
+            // a count the rest of the file cannot hold would only make for a huge allocation
+            long least = nodeCount * (1L + 3 * Integer.BYTES) + pairCount * 2L * Integer.BYTES
+                    + (long) (nameCount + rootCount) * Integer.BYTES + typeCount;
+            if (nodeCount < 0 || pairCount < 0 || nameCount < 0 || typeCount < 0 || rootCount < 0
+                    || least > in.remaining()) {
+                return null;
+            }
+
+            List<String> names = new ArrayList<>(nameCount);
+            for (int i = 0; i < nameCount; i++) {
+                int length = in.getInt();
+                if (length < 0 || length > in.remaining()) return null;
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            List<Primitive> types = new ArrayList<>(typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                Primitive type = readType(in, names, types, typeCount);
+                if (type == null) return null;
+                if (version < 2 && (type instanceof RecursiveType || type instanceof RecursiveReference)) return null;
+                types.add(type);
+            }
+
+            byte[] kinds = new byte[nodeCount];
+            in.get(kinds);
+            int[] first = readInts(in, nodeCount);
+            int[] second = readInts(in, nodeCount);
+            int[] third = readInts(in, nodeCount);
+            int[] pairs = readInts(in, pairCount * 2);
+            int[] roots = readInts(in, rootCount);
+            for (int node = 0; version < 2 && node < nodeCount; node++) {
+                if (kinds[node] == Expression.Type.LETREC.ordinal()) return null;
+            }
+            if (!isTree(kinds, first, second, third, pairs, nameCount, types, roots)) return null;
+
+            return new FlatTree(kinds, first, second, third, pairs, names, types, roots);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the Expression objects of a saved tree, for the checkers that work on those. The children of a node
+     * come before it, so one pass over the nodes builds every node after its children.
+     */
+    public static List<Expression> expressions(FlatTree tree) {
+        ExpressionBuilder builder = new ExpressionBuilder();
+        int[] built = new int[tree.size()];
+        for (int node = 0; node < tree.size(); node++) {
+            int first = tree.first(node);
+            int second = tree.second(node);
+            int third = tree.third(node);
+            built[node] = switch (tree.kind(node)) {
+                case NUMBER -> builder.literal(Expression.Type.NUMBER);
+                case BOOLEAN -> builder.literal(Expression.Type.BOOLEAN);
+                case IDENTIFIER -> builder.identifier(tree.nameOf(first));
+                case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN ->
+                        builder.binary(tree.kind(node), built[first], built[second]);
+                case UNARY -> builder.unary(built[first]);
+                case CONDITIONAL -> builder.conditional(built[first], built[second], built[third]);
+                case FUNCTION -> builder.function(tree.nameOf(first), second < 0 ? null : tree.typeOf(second),
+                        built[third]);
+                case SET -> builder.set(tree.nameOf(first), built[second]);
+                case FIELD -> builder.field(built[first], tree.nameOf(second));
+                case OBJECT, LET -> {
+                    // the builder takes bindings as the parser holds them: names at even offsets, nodes at odd ones
+                    Object[] names = new Object[second * 2];
+                    int[] values = new int[second * 2];
+                    for (int i = 0; i < second; i++) {
+                        names[i * 2] = tree.nameOf(tree.pairName(first + i));
+                        values[i * 2 + 1] = built[tree.pairNode(first + i)];
+                    }
+                    yield tree.kind(node) == Expression.Type.OBJECT
+                            ? builder.object(names, values, 0, names.length)
+                            : builder.let(names, values, 0, names.length, built[third]);
+                }
+                case LETREC -> {
+                    Object[] values = new Object[second * 3];
+                    int[] nodes = new int[second * 3];
+                    for (int i = 0; i < second; i++) {
+                        int annotation = tree.pairName(first + second + i);
+                        values[i * 3] = tree.nameOf(tree.pairName(first + i));
+                        values[i * 3 + 1] = annotation < 0 ? null : tree.typeOf(annotation);
+                        nodes[i * 3 + 2] = built[tree.pairNode(first + i)];
+                    }
+                    yield builder.letrec(values, nodes, 0, values.length, built[third]);
+                }
+            };
+        }
+
+        List<Expression> expressions = new ArrayList<>(tree.getRoots().length);
+        for (int root : tree.getRoots()) {
+            expressions.add(builder.get(built[root]));
+        }
+        return expressions;
+    }
+
+    /**
+     * Adds a type to the table after the types it is made of, and the names of its attributes to the names.
+     */
+    private static void register(Primitive root, List<Primitive> types, Map<Primitive, Integer> typeIds,
+                                 List<String> names, Map<String, Integer> nameIds) {
+        // without recursion, since types nest as deep as the functions that make them
+        Deque<Primitive> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Primitive type = pending.peek();
+            if (typeIds.containsKey(type)) {
+                pending.pop();
+                continue;
+            }
+
+            List<Primitive> parts = new ArrayList<>();
+            if (type instanceof ArrowType arrow) {
+                parts.add(arrow.getArgument());
+                parts.add(arrow.getResult());
+            } else if (type instanceof ObjectType object) {
+                for (Attribute a : object.getAttributes()) {
+                    parts.add(a.type());
+                    if (nameIds.putIfAbsent(a.identifier(), names.size()) == null) names.add(a.identifier());
+                }
+            } else if (type instanceof RecursiveType recursive) {
+                parts.add(recursive.getBody());
+            }
+            boolean ready = true;
+            for (Primitive part : parts) {
+                if (typeIds.containsKey(part)) continue;
+                pending.push(part);
+                ready = false;
+            }
+            if (!ready) continue;
+
+            pending.pop();
+            typeIds.put(type, types.size());
+            types.add(type);
+        }
+    }
+
+    private static Primitive readType(ByteBuffer in, List<String> names, List<Primitive> types, int typeCount) {
+        int kind = in.get();
+        if (kind < 0 || kind >= TYPE_KINDS.length) return null;
+        switch (TYPE_KINDS[kind]) {
+            case ARROW -> {
+                int argument = in.getInt();
+                int result = in.getInt();
+                if (!isIndex(argument, types.size()) || !isIndex(result, types.size())) return null;
+                return ArrowType.of(types.get(argument), types.get(result));
+            }
+            case OBJECT -> {
+                int count = in.getInt();
+                if (count < 0 || count > in.remaining() / (2 * Integer.BYTES)) return null;
+                List<Attribute> attributes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int name = in.getInt();
+                    int type = in.getInt();
+                    if (!isIndex(name, names.size()) || !isIndex(type, types.size())) return null;
+                    attributes.add(new Attribute(names.get(name), types.get(type)));
+                }
+                return ObjectType.of(attributes);
+            }
+            case RECURSIVE -> {
+                int body = in.getInt();
+                if (!isIndex(body, types.size()) || !RecursiveType.isContractive(types.get(body))) return null;
+                return RecursiveType.of(types.get(body));
+            }
+            case REFERENCE -> {
+                int index = in.getInt();
+                // a reference is to a recursive type around it, and there are no more of those than types
+                if (!isIndex(index, typeCount)) return null;
+                return RecursiveReference.of(index);
+            }
+            case ERROR, VARIABLE -> {
+                // only made by checking, never written in a program
+                return null;
+            }
+            default -> {
+                return TruePrimitive.of(TYPE_KINDS[kind]);
+            }
+        }
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Returns whether the arrays hold a tree the checkers can walk: every operand refers to an entry of its table,
+     * and every node is the child of exactly one node that comes after it, or else a root or unused.
+     */
+    private static boolean isTree(byte[] kinds, int[] first, int[] second, int[] third, int[] pairs, int nameCount,
+                                  List<Primitive> types, int[] roots) {
+        boolean[] taken = new boolean[kinds.length];
+        int pairCount = pairs.length / 2;
+        for (int node = 0; node < kinds.length; node++) {
+            if (kinds[node] < 0 || kinds[node] >= KINDS.length) return false;
+            boolean valid = switch (KINDS[kinds[node]]) {
+                case NUMBER, BOOLEAN -> true;
+                case IDENTIFIER -> isIndex(first[node], nameCount);
+                case ARITHMETIC, RELATIONAL, LOGICAL, APP, BEGIN ->
+                        take(first[node], node, taken) && take(second[node], node, taken);
+                case UNARY -> take(first[node], node, taken);
+                case CONDITIONAL -> take(first[node], node, taken) && take(second[node], node, taken)
+                        && take(third[node], node, taken);
+                case FUNCTION -> isIndex(first[node], nameCount)
+                        && (second[node] == -1 || isAnnotation(second[node], types))
+                        && take(third[node], node, taken);
+                case SET -> isIndex(first[node], nameCount) && take(second[node], node, taken);
+                case FIELD -> take(first[node], node, taken) && isIndex(second[node], nameCount);
+                case OBJECT, LET -> {
+                    int count = second[node];
+                    if (count < 0 || count > 0 && (first[node] < 0 || first[node] > pairCount - count)) yield false;
+                    boolean pairsValid = true;
+                    for (int pair = first[node]; pairsValid && pair < first[node] + count; pair++) {
+                        pairsValid = isIndex(pairs[pair * 2], nameCount) && take(pairs[pair * 2 + 1], node, taken);
+                    }
+                    yield pairsValid && (KINDS[kinds[node]] == Expression.Type.OBJECT || take(third[node], node, taken));
+                }
+                case LETREC -> {
+                    int count = second[node];
+                    if (count < 0 || count > 0 && (first[node] < 0 || first[node] > pairCount - 2 * count)) yield false;
+                    boolean pairsValid = true;
+                    for (int pair = first[node]; pairsValid && pair < first[node] + count; pair++) {
+                        int annotation = pairs[(pair + count) * 2];
+                        pairsValid = isIndex(pairs[pair * 2], nameCount) && take(pairs[pair * 2 + 1], node, taken)
+                                && KINDS[kinds[pairs[pair * 2 + 1]]] == Expression.Type.FUNCTION
+                                && (annotation == -1 || isAnnotation(annotation, types))
+                                && pairs[(pair + count) * 2 + 1] == -1;
+                    }
+                    yield pairsValid && take(third[node], node, taken);
+                }
+            };
+            if (!valid) return false;
+        }
+
+        for (int root : roots) {
+            if (!take(root, kinds.length, taken)) return false;
+        }
+        return true;
+    }
+
+    private static boolean take(int child, int parent, boolean[] taken) {
+        if (child < 0 || child >= parent || taken[child]) return false;
+        taken[child] = true;
+        return true;
+    }
+
+    private static boolean isIndex(int index, int count) {
+        return index >= 0 && index < count;
+    }
+
+    /**
+     * Returns whether the index is that of a type that can annotate a variable, which is one with no reference
+     * out of it.
+     */
+    private static boolean isAnnotation(int index, List<Primitive> types) {
+        return isIndex(index, types.size()) && types.get(index).isClosed();
+    }
+}
@@ -0,0 +1,114 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks submissions concurrently, each on its own virtual thread with its own checker, while sharing the
+ * automaton tables and the type interner. At most a fixed number of submissions are checked at once; submitting
+ * beyond that blocks the caller until one finishes, which pushes back on whoever is producing the submissions.
+ * Latencies are recorded in a histogram of power-of-two microsecond buckets.
+ */
+public class CheckService implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long started = System.nanoTime();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    public CheckService(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Starts checking the given program, blocking while the service is already checking as many programs as it
+     * may at once.
+     */
+    public CompletableFuture<String> submit(byte[] program) throws InterruptedException {
+        return submit(program, null);
+    }
+
+    /**
+     * Starts checking the given program as submit does, in the given session if it is not null.
+     */
+    public CompletableFuture<String> submit(byte[] program, Session session) throws InterruptedException {
+        permits.acquire();
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    if (session != null) return session.check(program);
+                    return Pipeline.check(ByteBuffer.wrap(program), false);
+                } finally {
+                    record(System.nanoTime() - submitted);
+                    permits.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public Stats getStats() {
+        long count = completed.sum();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return new Stats(count, count / seconds, count == 0 ? 0 : totalNanos.sum() / count / 1000,
+                percentile(0.5), percentile(0.99), maxNanos.get() / 1000);
+    }
+
+    /**
+     * Waits for the submissions in flight to finish.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private void record(long nanos) {
+        completed.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos / 1000));
+    }
+
+    /**
+     * Returns the upper bound (in microseconds) of the bucket holding the given fraction of the latencies.
+     */
+    private long percentile(double fraction) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) count += buckets.get(i);
+        long threshold = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold && seen > 0) return (1L << i) - 1;
+        }
+        return 0;
+    }
+
+    public record Stats(long completed, double perSecond, long meanMicros, long p50Micros, long p99Micros,
+                        long maxMicros) {
+        @Override
+        public String toString() {
+            return String.format("%d checked, %.1f/s, latency mean %dus p50 <%dus p99 <%dus max %dus",
+                    completed, perSecond, meanMicros, p50Micros, p99Micros, maxMicros);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for one phase of checking a program, carrying the same numbers as PhaseStats. Fields
+ * that do not apply to a phase are -1.
+ */
+@Name("typechecker.Phase")
+@Label("Checker Phase")
+@Category("Type Checker")
+@Description("One phase (tokenize, parse or check) of checking a program")
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    @Label("Peak Environment")
+    int peakEnvironment;
+}
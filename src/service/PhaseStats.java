@@ -0,0 +1,84 @@
+package service;
+
+import jdk.jfr.EventType;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the phases of checking one program: wall time and the bytes the current thread allocated, along with
+ * the token count, node count and peak environment size where a phase has them (-1 where it does not). Every
+ * phase is also committed as a PhaseEvent, so recordings show it next to GC activity.
+ */
+public class PhaseStats {
+
+    public record Phase(String name, long nanos, long allocated, int tokens, int nodes, int peakEnvironment) {
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final List<Phase> phases = new ArrayList<>();
+    private PhaseEvent event;
+    private long start;
+    private long startAllocated;
+
+    /**
+     * Returns fresh stats if a flight recording has the phase event enabled, or null so nothing is measured.
+     */
+    public static PhaseStats ifRecording() {
+        return EventType.getEventType(PhaseEvent.class).isEnabled() ? new PhaseStats() : null;
+    }
+
+    public void begin() {
+        event = new PhaseEvent();
+        event.begin();
+        startAllocated = allocated();
+        start = System.nanoTime();
+    }
+
+    public void end(String name, int tokens, int nodes, int peakEnvironment) {
+        long nanos = System.nanoTime() - start;
+        long end = allocated();
+        long allocated = end < 0 || startAllocated < 0 ? -1 : end - startAllocated;
+        phases.add(new Phase(name, nanos, allocated, tokens, nodes, peakEnvironment));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = name;
+            event.tokens = tokens;
+            event.nodes = nodes;
+            event.allocated = allocated;
+            event.peakEnvironment = peakEnvironment;
+            event.commit();
+        }
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-10s %12s %14s %10s %10s %10s%n",
+                "phase", "ms", "allocated", "tokens", "nodes", "peak env"));
+        for (Phase p : phases) {
+            sb.append(String.format("%-10s %12.3f %14s %10s %10s %10s%n", p.name(), p.nanos() / 1e6,
+                    orDash(p.allocated()), orDash(p.tokens()), orDash(p.nodes()), orDash(p.peakEnvironment())));
+        }
+        return sb.toString();
+    }
+
+    private static String orDash(long value) {
+        return value < 0 ? "-" : Long.toString(value);
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 where that is not tracked (as for virtual
+     * threads).
+     */
+    private static long allocated() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+}
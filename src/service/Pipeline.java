@@ -0,0 +1,277 @@
+package service;
+
+import expression.Expression;
+import expression.FlatTree;
+import interpreter.FlatChecker;
+import interpreter.ParallelChecker;
+import interpreter.TypeCheckException;
+import interpreter.TypeChecker;
+import parser.FormReader;
+import parser.ParallelParser;
+import parser.Parser;
+import parser.TokenBuffer;
+import parser.Tokenizer;
+import parser.TreeFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a whole program through the tokenizer, parser and checker, producing the line that is printed for it.
+ */
+public class Pipeline {
+
+    public static String check(ByteBuffer source, boolean parallel) {
+        return check(source, parallel, PhaseStats.ifRecording());
+    }
+
+    /**
+     * Checks the program with the given checker, which may remember what it checked before.
+     */
+    public static String check(ByteBuffer source, TypeChecker checker) {
+        TokenBuffer tokens = Tokenizer.run(source);
+        if (tokens == null) return "Invalid tokens.";
+
+        List<Expression> expressions = Parser.run(tokens);
+        if (expressions == null) return "Invalid syntax.";
+
+        return checker.run(expressions);
+    }
+
+    /**
+     * Checks the program, measuring each phase into the given stats unless they are null. In parallel mode the
+     * source is tokenized and parsed in chunks cut at top-level forms, and every phase only counts what the calling
+     * thread allocates; the node count sums those of the chunks, and the peak environment is the largest of any
+     * thread's checker.
+     */
+    public static String check(ByteBuffer source, boolean parallel, PhaseStats stats) {
+        if (parallel) return checkParallel(source, stats);
+        if (stats == null) {
+            TokenBuffer tokens = Tokenizer.run(source);
+            if (tokens == null) return "Invalid tokens.";
+
+            List<Expression> expressions = Parser.run(tokens);
+            if (expressions == null) return "Invalid syntax.";
+
+            return new TypeChecker().run(expressions);
+        }
+
+        stats.begin();
+        TokenBuffer tokens = Tokenizer.run(source);
+        stats.end("tokenize", tokens == null ? -1 : tokens.size(), -1, -1);
+        if (tokens == null) return "Invalid tokens.";
+
+        stats.begin();
+        Parser parser = new Parser(tokens);
+        List<Expression> expressions = parser.parse();
+        stats.end("parse", tokens.size(), parser.getNodeCount(), -1);
+        if (expressions == null) return "Invalid syntax.";
+
+        stats.begin();
+        TypeChecker checker = new TypeChecker();
+        String result = checker.run(expressions);
+        stats.end("check", -1, parser.getNodeCount(), checker.getPeakEnvironment());
+        return result;
+    }
+
+    private static String checkParallel(ByteBuffer source, PhaseStats stats) {
+        if (stats != null) stats.begin();
+        List<TokenBuffer> chunks = ParallelParser.tokenize(source);
+        int tokenCount = -1;
+        if (chunks != null) {
+            tokenCount = 0;
+            for (TokenBuffer tokens : chunks) {
+                tokenCount += tokens.size();
+            }
+        }
+        if (stats != null) stats.end("tokenize", tokenCount, -1, -1);
+        if (chunks == null) return "Invalid tokens.";
+
+        AtomicInteger nodes = stats == null ? null : new AtomicInteger();
+        if (stats != null) stats.begin();
+        List<Expression> expressions = ParallelParser.parse(chunks, nodes);
+        if (stats != null) stats.end("parse", tokenCount, nodes.get(), -1);
+        if (expressions == null) return "Invalid syntax.";
+
+        AtomicInteger peakEnvironment = stats == null ? null : new AtomicInteger();
+        if (stats != null) stats.begin();
+        String result = ParallelChecker.run(expressions, peakEnvironment);
+        if (stats != null) stats.end("check", -1, nodes.get(), peakEnvironment.get());
+        return result;
+    }
+
+    /**
+     * Checks the program through the flat tree encoding, measuring each phase into the given stats unless they are
+     * null. The result is the same as that of check.
+     */
+    public static String checkFlat(ByteBuffer source, PhaseStats stats) {
+        if (stats != null) stats.begin();
+        TokenBuffer tokens = Tokenizer.run(source);
+        if (stats != null) stats.end("tokenize", tokens == null ? -1 : tokens.size(), -1, -1);
+        if (tokens == null) return "Invalid tokens.";
+
+        if (stats != null) stats.begin();
+        FlatTree tree = Parser.runFlat(tokens);
+        if (stats != null) stats.end("parse", tokens.size(), tree == null ? -1 : tree.size(), -1);
+        if (tree == null) return "Invalid syntax.";
+
+        if (stats != null) stats.begin();
+        AtomicInteger peakEnvironment = new AtomicInteger();
+        String result;
+        if (tree.isAnnotated()) {
+            result = FlatChecker.run(tree, peakEnvironment);
+        } else {
+            // inference only works on expressions, so a tree that needs it is checked as them
+            TypeChecker checker = new TypeChecker();
+            result = checker.run(TreeFile.expressions(tree));
+            peakEnvironment.set(checker.getPeakEnvironment());
+        }
+        if (stats != null) stats.end("check", -1, tree.size(), peakEnvironment.get());
+        return result;
+    }
+
+    /**
+     * Parses the program and saves its tree to the given file, returning null, or returns the line printed for a
+     * program that does not parse.
+     */
+    public static String save(ByteBuffer source, Path path) throws IOException {
+        TokenBuffer tokens = Tokenizer.run(source);
+        if (tokens == null) return "Invalid tokens.";
+
+        FlatTree tree = Parser.runFlat(tokens);
+        if (tree == null) return "Invalid syntax.";
+
+        TreeFile.write(tree, path);
+        return null;
+    }
+
+    /**
+     * Returns whether the input is a tree saved by save rather than source text.
+     */
+    public static boolean isSaved(ByteBuffer input) {
+        return TreeFile.matches(input);
+    }
+
+    /**
+     * Checks a tree saved by save, which takes the place of tokenizing and parsing, measuring each phase into the
+     * given stats unless they are null. The result is the same as that of checking the source it was saved from,
+     * with the flat checker or else the object checker (in parallel, if asked to).
+     */
+    public static String checkSaved(ByteBuffer file, boolean parallel, boolean flat, PhaseStats stats) {
+        if (stats != null) stats.begin();
+        FlatTree tree = TreeFile.read(file);
+        // inference only works on expressions, so a tree that needs it is checked as them
+        boolean onTree = flat && tree != null && tree.isAnnotated();
+        List<Expression> expressions = tree == null || onTree ? null : TreeFile.expressions(tree);
+        if (stats != null) stats.end("load", -1, tree == null ? -1 : tree.size(), -1);
+        if (tree == null) return "Invalid tree.";
+
+        if (stats != null) stats.begin();
+        String result;
+        AtomicInteger peakEnvironment = new AtomicInteger();
+        if (onTree) {
+            result = FlatChecker.run(tree, peakEnvironment);
+        } else if (parallel) {
+            result = ParallelChecker.run(expressions, peakEnvironment);
+        } else {
+            TypeChecker checker = new TypeChecker();
+            result = checker.run(expressions);
+            peakEnvironment.set(checker.getPeakEnvironment());
+        }
+        if (stats != null) stats.end("check", -1, tree.size(), peakEnvironment.get());
+        return result;
+    }
+
+    /**
+     * Checks the program, source or saved tree, carrying on past type errors, and returns a line for each error in
+     * the order they were found, or the single line check would print if there were none.
+     */
+    public static List<String> checkAll(ByteBuffer input, boolean flat) {
+        Program program = load(input, flat);
+        if (program.failure() != null) return List.of(program.failure());
+        return program.tree() != null ? FlatChecker.runAll(program.tree())
+                : new TypeChecker().runAll(program.expressions());
+    }
+
+    /**
+     * Checks the program, source or saved tree, writing the line for each top-level expression to out as soon as it
+     * has been checked rather than only the last: its type, or its error, after which checking stops. If all errors
+     * are wanted, every error of an expression is written in place of its type and checking carries on.
+     */
+    public static void checkEach(ByteBuffer input, boolean flat, boolean allErrors, Appendable out) throws IOException {
+        Program program = load(input, flat);
+        if (program.failure() != null) {
+            out.append(program.failure()).append(System.lineSeparator());
+        } else if (program.tree() != null) {
+            FlatChecker.runEach(program.tree(), allErrors, out);
+        } else {
+            new TypeChecker().runEach(program.expressions(), allErrors, out);
+        }
+    }
+
+    // a program read for one of the checkers, as a tree for the flat checker or as expressions for the other, or
+    // the line printed for one that cannot be read
+    private record Program(FlatTree tree, List<Expression> expressions, String failure) {
+    }
+
+    private static Program load(ByteBuffer input, boolean flat) {
+        if (TreeFile.matches(input)) {
+            FlatTree tree = TreeFile.read(input);
+            if (tree == null) return new Program(null, null, "Invalid tree.");
+            if (flat && tree.isAnnotated()) return new Program(tree, null, null);
+            return new Program(null, TreeFile.expressions(tree), null);
+        }
+
+        TokenBuffer tokens = Tokenizer.run(input);
+        if (tokens == null) return new Program(null, null, "Invalid tokens.");
+        FlatTree tree = flat ? Parser.runFlat(tokens) : null;
+        List<Expression> expressions = flat ? null : Parser.run(tokens);
+        if (tree == null && expressions == null) return new Program(null, null, "Invalid syntax.");
+        if (tree != null && !tree.isAnnotated()) return new Program(null, TreeFile.expressions(tree), null);
+        return new Program(tree, expressions, null);
+    }
+
+    /**
+     * Checks each top-level form as soon as it has been read. After an error the rest of the input is still
+     * tokenized (and parsed, for type errors) so the result matches checking the whole input at once. The checker
+     * forgets the names of each form once it is checked, so memory is bounded by the largest form, not the stream.
+     */
+    public static String checkStreaming(InputStream in) throws IOException {
+        FormReader reader = new FormReader(in);
+        TypeChecker checker = new TypeChecker();
+        String result = "";
+        boolean invalidSyntax = false;
+        boolean typeError = false;
+
+        ByteBuffer form;
+        while ((form = reader.next()) != null) {
+            TokenBuffer tokens = Tokenizer.run(form);
+            if (tokens == null) return "Invalid tokens.";
+            if (invalidSyntax) continue;
+
+            List<Expression> expressions = Parser.run(tokens);
+            if (expressions == null) {
+                invalidSyntax = true;
+                continue;
+            }
+            if (typeError) continue;
+
+            for (Expression e : expressions) {
+                try {
+                    result = checker.check(e);
+                } catch (TypeCheckException ex) {
+                    result = TypeChecker.makeNewError(ex.getMessage());
+                    typeError = true;
+                    break;
+                }
+            }
+            checker.forgetNames();
+        }
+
+        return invalidSyntax ? "Invalid syntax." : result;
+    }
+}
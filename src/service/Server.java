@@ -0,0 +1,130 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps one JVM resident to check many programs, so the tokenizer, parser and checker stay warm between them. A
+ * request is the length of a program in bytes on a line of its own, followed by the program; the response is the
+ * line Main would print for that program. Requests are checked concurrently by a CheckService, each in isolation
+ * by a fresh checker, and answered in the order they arrived.
+ * <p>
+ * With sessions, each connection instead keeps a Session whose checker reuses the results of the subtrees it has
+ * checked, for an editor that sends its program again after every edit. The requests of one connection are then
+ * checked one at a time, while different connections are still checked concurrently.
+ */
+public class Server {
+
+    private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Answers requests read from the given stream until it ends, in a session of its own if sessions are wanted.
+     */
+    public static void serve(InputStream in, OutputStream out, CheckService service, boolean sessions)
+            throws IOException {
+        Session session = sessions ? new Session() : null;
+        InputStream input = new BufferedInputStream(in);
+        BlockingQueue<CompletableFuture<String>> pending = new ArrayBlockingQueue<>(service.getMaxConcurrent());
+        Thread writer = Thread.ofVirtual().start(() -> writeResponses(pending, new BufferedOutputStream(out)));
+
+        try {
+            while (true) {
+                int length = readLength(input);
+                if (length == -1) break;
+
+                byte[] program = length < 0 ? null : input.readNBytes(length);
+                if (program == null || program.length < length) {
+                    pending.put(CompletableFuture.completedFuture("Invalid request."));
+                    break;
+                }
+                pending.put(service.submit(program, session));
+            }
+            pending.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * Accepts connections on a Unix-domain socket at the given path, serving each on its own virtual thread.
+     */
+    public static void listen(Path socket, CheckService service, boolean sessions) throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().start(() -> serveClient(client, service, sessions));
+            }
+        }
+    }
+
+    private static void serveClient(SocketChannel client, CheckService service, boolean sessions) {
+        try (client) {
+            serve(Channels.newInputStream(client), Channels.newOutputStream(client), service, sessions);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeResponses(BlockingQueue<CompletableFuture<String>> pending, OutputStream out) {
+        try {
+            CompletableFuture<String> next;
+            while ((next = pending.take()) != END) {
+                String response;
+                try {
+                    response = next.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    response = "Internal error.";
+                }
+                out.write(response.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+                if (pending.isEmpty()) out.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads a length line, returning -1 at the end of the input and -2 if the line is not a length.
+     */
+    private static int readLength(InputStream in) throws IOException {
+        int c = in.read();
+        if (c == -1) return -1;
+
+        long length = 0;
+        int digits = 0;
+        while (c != '\n') {
+            if (c == '\r') {
+                c = in.read();
+                continue;
+            }
+            if (c < '0' || c > '9' || ++digits > 10) return -2;
+            length = length * 10 + (c - '0');
+            c = in.read();
+        }
+        return digits == 0 || length > Integer.MAX_VALUE ? -2 : (int) length;
+    }
+}
@@ -0,0 +1,31 @@
+package service;
+
+import interpreter.SubtreeCache;
+import interpreter.TypeChecker;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What the server keeps for one client between its requests: a checker that remembers the types of the subtrees
+ * it has checked, so a program sent again after an edit only has the subtrees that changed checked. The checker
+ * is not thread-safe, so the requests of a session are checked one at a time, in about the order they arrive.
+ */
+public class Session {
+
+    // digests and results kept at most, which is a few hundred bytes each
+    private static final int MAX_ENTRIES = 1 << 18;
+
+    private final TypeChecker checker = new TypeChecker(new SubtreeCache(MAX_ENTRIES));
+    // a lock rather than synchronized, which would pin the virtual thread that waits on it
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    String check(byte[] program) {
+        lock.lock();
+        try {
+            return Pipeline.check(ByteBuffer.wrap(program), checker);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
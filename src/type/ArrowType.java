@@ -5,12 +5,17 @@ public class ArrowType extends Primitive {
     private final Primitive argument;
     private final Primitive result;
 
-    public ArrowType(Primitive argument, Primitive result) {
-        super(Type.ARROW);
+    private ArrowType(Primitive argument, Primitive result) {
+        super(Type.ARROW, 31 * (31 * Type.ARROW.hashCode() + argument.hashCode()) + result.hashCode(),
+                Math.max(argument.reach, result.reach));
         this.argument = argument;
         this.result = result;
     }
 
+    public static ArrowType of(Primitive argument, Primitive result) {
+        return intern(new ArrowType(argument, result));
+    }
+
     public Primitive getArgument() {
         return argument;
     }
@@ -22,6 +27,6 @@ public class ArrowType extends Primitive {
     @Override
     protected boolean equals(Primitive p) {
         ArrowType that = (ArrowType) p;
-        return this.argument.equals(that.argument) && this.result.equals(that.result);
+        return this.argument == that.argument && this.result == that.result;
     }
 }
@@ -1,20 +1,51 @@
 package type;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ObjectType extends Primitive {
 
     private final List<Attribute> attributes;
+    // attribute name to position, built the first time an attribute of this type is looked up
+    private volatile Map<String, Integer> index;
 
-    public ObjectType(List<Attribute> attributes) {
-        super(Type.OBJECT);
+    private ObjectType(List<Attribute> attributes) {
+        super(Type.OBJECT, 31 * Type.OBJECT.hashCode() + attributes.hashCode(), reach(attributes));
         this.attributes = attributes;
     }
 
+    private static int reach(List<Attribute> attributes) {
+        int reach = 0;
+        for (Attribute attribute : attributes) {
+            reach = Math.max(reach, attribute.type().reach);
+        }
+        return reach;
+    }
+
+    public static ObjectType of(List<Attribute> attributes) {
+        return intern(new ObjectType(List.copyOf(attributes)));
+    }
+
     public List<Attribute> getAttributes() {
         return attributes;
     }
 
+    /**
+     * Returns the position of the (first) attribute with the given name, or -1 if there is none.
+     */
+    public int indexOf(String identifier) {
+        Map<String, Integer> index = this.index;
+        if (index == null) {
+            index = new HashMap<>();
+            for (int i = 0; i < attributes.size(); i++) {
+                index.putIfAbsent(attributes.get(i).identifier(), i);
+            }
+            this.index = index;
+        }
+        return index.getOrDefault(identifier, -1);
+    }
+
     @Override
     protected boolean equals(Primitive p) {
         ObjectType that = (ObjectType) p;
@@ -22,7 +53,7 @@ public class ObjectType extends Primitive {
         for (int i = 0; i < this.attributes.size(); i++) {
             Attribute thisAttr = this.attributes.get(i);
             Attribute thatAttr = that.attributes.get(i);
-            if (!thisAttr.type().equals(thatAttr.type()) || !thisAttr.identifier().equals(thatAttr.identifier())) {
+            if (thisAttr.type() != thatAttr.type() || !thisAttr.identifier().equals(thatAttr.identifier())) {
                 return false;
             }
         }
@@ -1,5 +1,20 @@
 package type;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A type. Every type is interned when it is built, so two types are equal exactly when they are the same instance
+ * and can be compared with ==. The structural equality and hash below are only used to find the canonical
+ * instance, and since the components of a type are canonical already they never have to look deeper than one
+ * level.
+ * <p>
+ * The intern table only holds its types weakly, so a type nothing uses any more is dropped from it, and a resident
+ * server does not keep every type any program ever built. A type built again after that is a new canonical
+ * instance with a new serial, which is safe since no instance of the old one is left to compare it with.
+ */
 public abstract class Primitive {
 
     public enum Type {
@@ -8,26 +23,102 @@ public abstract class Primitive {
         VOID,
         ARROW,
         OBJECT,
+        ERROR,
+        VARIABLE,
+        RECURSIVE,
+        REFERENCE,
     }
 
+    // the table is split by hash into stripes that are locked on their own, since a WeakHashMap is not concurrent;
+    // each entry maps a type to a weak reference to itself, as a strong value would keep its own key alive
+    private static final int STRIPES = 64;
+    private static final Map<Primitive, WeakReference<Primitive>>[] interned = newStripes();
+    private static final AtomicLong serials = new AtomicLong();
+
     protected final Type type;
+    private final int hash;
+    // one more than the largest index a reference in the type has beyond the recursive types around it, so 0 for
+    // a closed type
+    final int reach;
+    // a number unique to the canonical instance, set when it is interned
+    private long serial;
+    // how TypePrinter prints the type, once it has been printed, if that is short; a String is safe to publish
+    // without synchronizing, and at worst two threads both print it
+    String printed;
 
-    public Primitive(Type type) {
+    protected Primitive(Type type, int hash) {
+        this(type, hash, 0);
+    }
+
+    protected Primitive(Type type, int hash, int reach) {
         this.type = type;
+        this.hash = hash;
+        this.reach = reach;
     }
 
     public Type getType() {
         return type;
     }
 
+    public long getSerial() {
+        return serial;
+    }
+
+    /**
+     * Returns whether every reference in the type is to a recursive type inside it. Only closed types are the
+     * types of values; the others are the parts of recursive types.
+     */
+    public boolean isClosed() {
+        return reach == 0;
+    }
+
+    /**
+     * Returns the type with a recursive type at the top unfolded once, which is an arrow or object type, or the
+     * type itself if it is not recursive.
+     */
+    public Primitive unfold() {
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Primitive primitive = (Primitive) o;
-        if (type != primitive.type) return false;
+        if (type != primitive.type || hash != primitive.hash) return false;
         return equals(primitive);
     }
 
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     protected abstract boolean equals(Primitive p);
-}
\ No newline at end of file
+
+    /**
+     * Returns the canonical instance of the given type, registering it if it is the first of its kind.
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T extends Primitive> T intern(T primitive) {
+        Primitive p = primitive;
+        Map<Primitive, WeakReference<Primitive>> stripe = interned[(p.hash ^ (p.hash >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            WeakReference<Primitive> reference = stripe.get(p);
+            Primitive existing = reference == null ? null : reference.get();
+            if (existing != null) return (T) existing;
+            p.serial = serials.incrementAndGet();
+            stripe.put(p, new WeakReference<>(p));
+            return primitive;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Primitive, WeakReference<Primitive>>[] newStripes() {
+        Map<Primitive, WeakReference<Primitive>>[] stripes = (Map<Primitive, WeakReference<Primitive>>[]) new Map<?, ?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,29 @@
+package type;
+
+/**
+ * A reference, inside the body of a recursive type, to that recursive type or one around it: index 0 is the
+ * innermost, 1 the one around that, and so on. Indices rather than names make recursive types that only differ in
+ * the names of their variables the same instance.
+ */
+public class RecursiveReference extends Primitive {
+
+    private final int index;
+
+    private RecursiveReference(int index) {
+        super(Type.REFERENCE, 31 * Type.REFERENCE.hashCode() + index, index + 1);
+        this.index = index;
+    }
+
+    public static RecursiveReference of(int index) {
+        return intern(new RecursiveReference(index));
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    protected boolean equals(Primitive p) {
+        return this.index == ((RecursiveReference) p).index;
+    }
+}
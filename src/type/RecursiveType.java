@@ -0,0 +1,132 @@
+package type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recursive type, (rec t body), which stands for the infinite type made by putting the whole recursive type in
+ * place of every reference to it in its body, over and over. Recursive types are equi-recursive: a recursive type
+ * and its unfolding are interchangeable, so the rules look at the unfolding wherever they look at the kind of a
+ * type, and Subtyping compares the unfoldings of both sides.
+ * <p>
+ * The body must be an arrow or object type, so that unfolding always gets to one; a body such as t alone would
+ * stand for no type at all.
+ */
+public class RecursiveType extends Primitive {
+
+    private final Primitive body;
+    // the unfolding, once it has been asked for; a type is safe to publish without synchronizing, and at worst two
+    // threads both unfold it to the same interned instance
+    private Primitive unfolded;
+
+    private RecursiveType(Primitive body) {
+        super(Type.RECURSIVE, 31 * Type.RECURSIVE.hashCode() + body.hashCode(), Math.max(body.reach - 1, 0));
+        this.body = body;
+    }
+
+    public static RecursiveType of(Primitive body) {
+        if (!isContractive(body)) throw new IllegalArgumentException(body.getType() + " cannot be recursive");
+        return intern(new RecursiveType(body));
+    }
+
+    /**
+     * Returns whether a type can be the body of a recursive type.
+     */
+    public static boolean isContractive(Primitive body) {
+        return body.getType() == Type.ARROW || body.getType() == Type.OBJECT;
+    }
+
+    public Primitive getBody() {
+        return body;
+    }
+
+    @Override
+    public Primitive unfold() {
+        if (!isClosed()) throw new IllegalStateException("only a closed type can be unfolded");
+        Primitive unfolded = this.unfolded;
+        if (unfolded == null) {
+            unfolded = substitute(body, this);
+            this.unfolded = unfolded;
+        }
+        return unfolded;
+    }
+
+    @Override
+    protected boolean equals(Primitive p) {
+        return this.body == ((RecursiveType) p).body;
+    }
+
+    // a part of the body to substitute in, under depth recursive types of the body
+    private record Part(Primitive type, int depth) {
+    }
+
+    /**
+     * Puts the given closed type in place of every reference to the recursive type whose body is given. Parts that
+     * reach no further out than the recursive types inside the body are shared, not rebuilt.
+     */
+    private static Primitive substitute(Primitive body, Primitive replacement) {
+        Map<Part, Primitive> done = new HashMap<>();
+        Deque<Part> pending = new ArrayDeque<>();
+        Part root = new Part(body, 0);
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Part part = pending.peek();
+            Primitive type = part.type();
+            if (done.containsKey(part)) {
+                pending.pop();
+                continue;
+            }
+            if (type.reach <= part.depth()) {
+                done.put(part, type);
+                pending.pop();
+                continue;
+            }
+
+            // a reference that reaches this far can only be to the recursive type being unfolded
+            List<Part> parts = new ArrayList<>();
+            switch (type.getType()) {
+                case ARROW -> {
+                    parts.add(new Part(((ArrowType) type).getArgument(), part.depth()));
+                    parts.add(new Part(((ArrowType) type).getResult(), part.depth()));
+                }
+                case OBJECT -> {
+                    for (Attribute attribute : ((ObjectType) type).getAttributes()) {
+                        parts.add(new Part(attribute.type(), part.depth()));
+                    }
+                }
+                case RECURSIVE -> parts.add(new Part(((RecursiveType) type).getBody(), part.depth() + 1));
+                default -> {
+                    done.put(part, replacement);
+                    pending.pop();
+                    continue;
+                }
+            }
+            boolean ready = true;
+            for (Part p : parts) {
+                if (done.containsKey(p)) continue;
+                pending.push(p);
+                ready = false;
+            }
+            if (!ready) continue;
+
+            pending.pop();
+            done.put(part, switch (type.getType()) {
+                case ARROW -> ArrowType.of(done.get(parts.get(0)), done.get(parts.get(1)));
+                case OBJECT -> {
+                    List<Attribute> attributes = new ArrayList<>(parts.size());
+                    List<Attribute> old = ((ObjectType) type).getAttributes();
+                    for (int i = 0; i < old.size(); i++) {
+                        attributes.add(new Attribute(old.get(i).identifier(), done.get(parts.get(i))));
+                    }
+                    yield ObjectType.of(attributes);
+                }
+                default -> RecursiveType.of(done.get(parts.get(0)));
+            });
+        }
+        return done.get(root);
+    }
+}
@@ -0,0 +1,157 @@
+package type;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Structural subtyping. An object type is a subtype of another if it has every attribute of the other, by name and
+ * in any order, at a subtype of that attribute's type, and possibly more attributes besides. An arrow is a subtype
+ * of another if it takes a supertype of the other's argument and returns a subtype of its result. Any other type
+ * is only a subtype of itself. A recursive type is compared as its unfolding.
+ * <p>
+ * Types are interned, so answers are memoized per pair of types and a pair asked about before costs one lookup
+ * however large the types are. The pairs a question depends on are compared with a work list, not recursively.
+ * A pair met again while it is being compared is taken to hold, which is what makes comparing recursive types
+ * end: the answer is no only if some pair fails outright, and every pair is expanded once, so the work is linear
+ * in the number of pairs of parts of the two types.
+ * <p>
+ * The memos are shared by every checker in the process and each keeps only the pairs used most recently, so a
+ * resident server comparing the types of many programs does not keep an answer for every pair it ever met.
+ */
+public final class Subtyping {
+
+    private record Pair(long sub, long sup) {
+    }
+
+    private static final int MEMO_CAPACITY = 1 << 16;
+
+    private static final Memo memo = new Memo();
+    private static final Memo equivalences = new Memo();
+
+    private Subtyping() {
+    }
+
+    public static boolean isSubtype(Primitive sub, Primitive sup) {
+        return holds(sub, sup, false);
+    }
+
+    /**
+     * Returns whether each of two types is a subtype of the other, so they stand for the same values: the same
+     * type, or recursive types that unfold alike, or objects that only order their attributes differently.
+     */
+    public static boolean isEquivalent(Primitive a, Primitive b) {
+        return holds(a, b, true);
+    }
+
+    private static boolean holds(Primitive sub, Primitive sup, boolean equivalence) {
+        if (sub == sup) return true;
+        Memo memo = equivalence ? equivalences : Subtyping.memo;
+        if (sub.unfold().getType() != sup.unfold().getType()) return false;
+        Pair question = new Pair(sub.getSerial(), sup.getSerial());
+        Boolean known = memo.get(question);
+        if (known != null) return known;
+
+        // every pair the answer depends on: the answer is yes only if each of them holds
+        Set<Pair> visited = new HashSet<>();
+        Deque<Primitive> pending = new ArrayDeque<>();
+        pending.push(sup);
+        pending.push(sub);
+        while (!pending.isEmpty()) {
+            Primitive a = pending.pop();
+            Primitive b = pending.pop();
+            if (a == b) continue;
+
+            Pair pair = new Pair(a.getSerial(), b.getSerial());
+            known = memo.get(pair);
+            if (known == Boolean.TRUE || known == null && !visited.add(pair)) continue;
+            if (known == Boolean.FALSE || !expand(a.unfold(), b.unfold(), equivalence, pending)) {
+                memo.put(pair, false);
+                memo.put(question, false);
+                return false;
+            }
+        }
+
+        for (Pair pair : visited) {
+            memo.put(pair, true);
+        }
+        return true;
+    }
+
+    /**
+     * Pushes the pairs of components that must hold for sub to be a subtype of sup (or equivalent to it), or
+     * returns false if it cannot be one whatever their components are.
+     */
+    private static boolean expand(Primitive sub, Primitive sup, boolean equivalence, Deque<Primitive> pending) {
+        if (sub == sup) return true;
+        if (sub.getType() != sup.getType()) return false;
+        switch (sub.getType()) {
+            case ARROW -> {
+                ArrowType from = (ArrowType) sub;
+                ArrowType to = (ArrowType) sup;
+                push(from.getResult(), to.getResult(), pending);
+                if (equivalence) push(from.getArgument(), to.getArgument(), pending);
+                else push(to.getArgument(), from.getArgument(), pending);
+                return true;
+            }
+            case OBJECT -> {
+                ObjectType from = (ObjectType) sub;
+                if (equivalence && from.getAttributes().size() != ((ObjectType) sup).getAttributes().size()) {
+                    return false;
+                }
+                for (Attribute attribute : ((ObjectType) sup).getAttributes()) {
+                    int slot = from.indexOf(attribute.identifier());
+                    if (slot < 0) return false;
+                    push(from.getAttributes().get(slot).type(), attribute.type(), pending);
+                }
+                return true;
+            }
+            default -> {
+                // the same kind of atomic type is the same type, so these differ
+                return false;
+            }
+        }
+    }
+
+    private static void push(Primitive sub, Primitive sup, Deque<Primitive> pending) {
+        pending.push(sup);
+        pending.push(sub);
+    }
+
+    /**
+     * The answers for pairs of types, evicted least recently used first.
+     */
+    private static final class Memo {
+
+        // a lock rather than synchronized, since checkers may run on virtual threads
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Pair, Boolean> answers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair, Boolean> eldest) {
+                return size() > MEMO_CAPACITY;
+            }
+        };
+
+        Boolean get(Pair pair) {
+            lock.lock();
+            try {
+                return answers.get(pair);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Pair pair, boolean answer) {
+            lock.lock();
+            try {
+                answers.put(pair, answer);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
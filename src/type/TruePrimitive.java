@@ -1,8 +1,25 @@
 package type;
 
 public class TruePrimitive extends Primitive {
-    public TruePrimitive(Type type) {
-        super(type);
+
+    public static final TruePrimitive NUMBER = intern(new TruePrimitive(Type.NUMBER));
+    public static final TruePrimitive BOOLEAN = intern(new TruePrimitive(Type.BOOLEAN));
+    public static final TruePrimitive VOID = intern(new TruePrimitive(Type.VOID));
+    // the type of a construct that has a type error, which checking that carries on past errors gives it
+    public static final TruePrimitive ERROR = intern(new TruePrimitive(Type.ERROR));
+
+    private TruePrimitive(Type type) {
+        super(type, type.hashCode());
+    }
+
+    public static TruePrimitive of(Type type) {
+        return switch (type) {
+            case NUMBER -> NUMBER;
+            case BOOLEAN -> BOOLEAN;
+            case VOID -> VOID;
+            case ERROR -> ERROR;
+            default -> throw new IllegalArgumentException(type + " is not a primitive type");
+        };
     }
 
     @Override
@@ -0,0 +1,152 @@
+package type;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Prints types the way the checker reports them, such as (-> (number) (object [a (boolean)])), straight into an
+ * Appendable and without recursing. Types are interned, so the printed form of each one is kept on the type once
+ * all its components have been printed, and printing it again, alone or inside a larger type, appends that one
+ * string. Forms longer than CACHED_LENGTH are never kept but streamed piece by piece, so what is kept stays
+ * linear in the number of types however deeply they nest.
+ * <p>
+ * A recursive type prints as (rec t body), where the variables are named t, t1, t2 and so on by how many recursive
+ * types are around them in the printed type. A name therefore depends on where the type is printed, so neither a
+ * recursive type nor anything with one inside is kept.
+ */
+public final class TypePrinter {
+
+    static final int CACHED_LENGTH = 256;
+
+    // the end of a type whose components have been printed
+    private record Close(Primitive type) {
+    }
+
+    private TypePrinter() {
+    }
+
+    public static void print(Primitive type, Appendable out) throws IOException {
+        String printed = type.printed;
+        if (printed != null) {
+            out.append(printed);
+            return;
+        }
+
+        // what is left to print, next on top: types, the text that goes between them, and their ends
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(type);
+        // the recursive types around the next type
+        int binders = 0;
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String text) {
+                out.append(text);
+            } else if (next instanceof Close close) {
+                out.append(')');
+                if (close.type() instanceof RecursiveType) binders--;
+                else keep(close.type());
+            } else if (next instanceof RecursiveType recursive) {
+                out.append("(rec ").append(binder(binders++)).append(' ');
+                pending.push(new Close(recursive));
+                pending.push(recursive.getBody());
+            } else if (next instanceof RecursiveReference reference) {
+                out.append(binder(binders - 1 - reference.getIndex()));
+            } else {
+                open((Primitive) next, out, pending);
+            }
+        }
+    }
+
+    /**
+     * Returns the printed form of a type, which is kept if it is short.
+     */
+    public static String toString(Primitive type) {
+        if (type.printed != null) return type.printed;
+        StringBuilder sb = new StringBuilder();
+        try {
+            print(type, sb);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    private static void open(Primitive type, Appendable out, Deque<Object> pending) throws IOException {
+        String printed = type.printed;
+        if (printed != null) {
+            out.append(printed);
+            return;
+        }
+
+        switch (type.getType()) {
+            case ARROW -> {
+                ArrowType arrow = (ArrowType) type;
+                out.append("(-> ");
+                pending.push(new Close(type));
+                pending.push(arrow.getResult());
+                pending.push(" ");
+                pending.push(arrow.getArgument());
+            }
+            case OBJECT -> {
+                List<Attribute> attributes = ((ObjectType) type).getAttributes();
+                out.append("(object");
+                pending.push(new Close(type));
+                for (int i = attributes.size() - 1; i >= 0; i--) {
+                    pending.push("]");
+                    pending.push(attributes.get(i).type());
+                    pending.push(" ");
+                    pending.push(attributes.get(i).identifier());
+                    pending.push(" [");
+                }
+            }
+            case VARIABLE -> {
+                type.printed = ((TypeVariable) type).getName();
+                out.append(type.printed);
+            }
+            default -> {
+                type.printed = "(" + type.getType().name().toLowerCase() + ")";
+                out.append(type.printed);
+            }
+        }
+    }
+
+    private static String binder(int depth) {
+        return depth == 0 ? "t" : "t" + depth;
+    }
+
+    /**
+     * Keeps the printed form of a type whose components have just been printed, if they were all short enough to
+     * be kept and it is too.
+     */
+    private static void keep(Primitive type) {
+        int length;
+        if (type instanceof ArrowType arrow) {
+            String argument = arrow.getArgument().printed;
+            String result = arrow.getResult().printed;
+            if (argument == null || result == null) return;
+            length = "(-> ".length() + argument.length() + 1 + result.length() + 1;
+            if (length > CACHED_LENGTH) return;
+            type.printed = "(-> " + argument + " " + result + ")";
+            return;
+        }
+
+        List<Attribute> attributes = ((ObjectType) type).getAttributes();
+        length = "(object".length() + 1;
+        for (Attribute attribute : attributes) {
+            String printed = attribute.type().printed;
+            if (printed == null) return;
+            length += " [".length() + attribute.identifier().length() + 1 + printed.length() + 1;
+        }
+        if (length > CACHED_LENGTH) return;
+
+        StringBuilder sb = new StringBuilder(length).append("(object");
+        for (Attribute attribute : attributes) {
+            sb.append(" [").append(attribute.identifier()).append(' ').append(attribute.type().printed).append(']');
+        }
+        type.printed = sb.append(')').toString();
+    }
+}
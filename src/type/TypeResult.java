@@ -1,4 +0,0 @@
-package type;
-
-public record TypeResult(Primitive primitive, int tokensConsumed) {
-}
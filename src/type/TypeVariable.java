@@ -0,0 +1,33 @@
+package type;
+
+/**
+ * A type left open by inference, such as the argument of (fun (x) x). Variables are numbered in the order they
+ * first appear in the type they belong to, so equal types with the same pattern of variables are the same
+ * instance. They print as 'a, 'b and so on.
+ */
+public class TypeVariable extends Primitive {
+
+    private final int index;
+
+    private TypeVariable(int index) {
+        super(Type.VARIABLE, 31 * Type.VARIABLE.hashCode() + index);
+        this.index = index;
+    }
+
+    public static TypeVariable of(int index) {
+        return intern(new TypeVariable(index));
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return "'" + (char) ('a' + index % 26) + (index < 26 ? "" : String.valueOf(index / 26));
+    }
+
+    @Override
+    protected boolean equals(Primitive p) {
+        return this.index == ((TypeVariable) p).index;
+    }
+}